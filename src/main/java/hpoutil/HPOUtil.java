@@ -15,13 +15,25 @@ import org.apache.log4j.Logger;
 
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Set;
 import java.util.List;
 import java.util.ArrayList;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
 import java.nio.charset.Charset;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.FileSystems;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
 import java.io.BufferedWriter;
+import java.io.File;
 import java.io.IOException;
 
 import hpoutil.io.*;
@@ -38,8 +50,24 @@ public class HPOUtil {
     private static Logger log = Logger.getLogger(HPOUtil.class.getName());
 
     private String pathToHpoOBOFile=null;
+    /** Path to the compiled (binary) HPO snapshot; null if no snapshot is to be used. */
+    private String pathToHpoSnapshot=null;
     private String pathToMorbidMap=null;
     private String pathToHPOAnnot=null;
+    /** If true, restrict the HPO to the terms needed by the nosology before classifying. */
+    private boolean sliceOntology=false;
+    /** Path to the binary cache of the parsed annotation files (null: no cache). */
+    private String pathToAnnotCache=null;
+    /** If true, parse an annotation file only when a rule needs the disease's annotations. */
+    private boolean lazyAnnotations=false;
+    /** If true, classify the diseases while the annotation files are parsed (see {@link StreamingClassifier}). */
+    private boolean streaming=false;
+    /** If true, keep running and reclassify annotation files when they change. */
+    private boolean watchAnnotations=false;
+    /** Time without further changes before a batch of changed files is processed (milliseconds). */
+    private static final long WATCH_SETTLE_MS = 50;
+    /** Number of threads used to parse the annotation files. */
+    private int nThreads=HPOAnnotationFileParser.getDefaultThreadCount();
     /** Key: a MIM ID, value: list of OMIM diseases */
     private HashMap<Integer,List<OMIMDisease> > omimmap=null;
     /** Key a MIM ID, value: a Disease annotation (derived from the HPO annotation data). */
@@ -47,7 +75,7 @@ public class HPOUtil {
     /** List of the 40 skeletal dysplasa categories */
     private ArrayList<DiseaseCategory> categorylist=null;
     /** Set of all diseases that have been found to date. */
-    private HashSet<Integer> assigned=null;
+    private DiseaseSet assigned=null;
 
 
     /** A representation of the HPO Ontology */
@@ -57,14 +85,20 @@ public class HPOUtil {
 	HPOUtil hpoutil = new HPOUtil(args);
 	hpoutil.parseHPOFile();
 	hpoutil.parseMorbidMap();
-	hpoutil.parseHPOAnnotationFiles();
-	hpoutil.parseCategoryFiles();
+	if (hpoutil.streaming) {
+	    hpoutil.classifyStreaming();
+	} else {
+	    hpoutil.parseHPOAnnotationFiles();
+	    hpoutil.parseCategoryFiles();
+	}
 	hpoutil.outputResults();
+	if (hpoutil.watchAnnotations)
+	    hpoutil.watchAnnotationFiles();
     }
 
     public HPOUtil(String args[]) {
 	parseCommandLineArguments(args);
-	this.assigned=new HashSet<Integer>();
+	this.assigned=new DiseaseSet();
     }
 
     /**
@@ -76,18 +110,131 @@ public class HPOUtil {
 	    System.err.println("HPOUtil.java: ERROR: Cannot perform inference with null hpo");
 	    System.exit(1);
 	}
-	DiseaseCategory.setHPO(this.hpo);
-	Definition.setHPO(this.hpo);
 	CategoryParser parser = new CategoryParser();
 	this.categorylist=parser.getDiseaseCategoryList();
+	if (this.sliceOntology && (this.lazyAnnotations || this.watchAnnotations)) {
+	    log.warn("--slice needs the annotations of all diseases and is ignored with --lazy and --watch");
+	} else if (this.sliceOntology) {
+	    sliceHPO();
+	}
+	DiseaseCategory.setHPO(this.hpo);
+	Definition.setHPO(this.hpo);
+	if (!this.lazyAnnotations) { /* the profiles and the index would parse every file */
+	    computeAnnotationProfiles();
+	    TermDiseaseIndex index = new TermDiseaseIndex(this.hpo,this.diseasemap);
+	    log.info(index.toString());
+	    DiseaseCategory.setDiseaseIndex(index);
+	}
+	GeneDiseaseIndex geneIndex = new GeneDiseaseIndex(this.diseasemap); /* needs only the genes, also with --lazy */
+	log.info(geneIndex.toString());
+	DiseaseCategory.setGeneIndex(geneIndex);
 	for (DiseaseCategory cat:categorylist) {
 	    System.out.println("Testing membership in category: " + cat.getName());
 	    cat.findMembers(this.diseasemap);
-	    ArrayList<Integer> lst = cat.getMemberList();
-	    for (Integer id:lst) {
-		this.assigned.add(id);  // Once assigned, we can remove the disease! 
+	    this.assigned.addAll(cat.getMembers());  // Once assigned, we can remove the disease! 
+	}
+	reportAssignments(this.diseasemap.size());
+	if (this.lazyAnnotations)
+	    log.info(String.format("Parsed %d of %d annotation files on demand",
+				   DiseaseAnnotation.getDeferredParseCount(),this.diseasemap.size()));
+    }
+
+    /**
+     * Log how many diseases were assigned to any category, how many to more than one
+     * category, and how many of the gold standard diseases were assigned to some category.
+     */
+    private void reportAssignments(int nDiseases) {
+	DiseaseSet seen = new DiseaseSet();
+	DiseaseSet multiple = new DiseaseSet();
+	DiseaseSet gold = new DiseaseSet();
+	for (DiseaseCategory cat:categorylist) {
+	    DiseaseSet members = cat.getMembers();
+	    multiple.addAll(DiseaseSet.and(seen,members));
+	    seen.addAll(members);
+	    gold.addAll(cat.getGoldStandard());
+	}
+	log.info(String.format("Assigned %d of %d diseases to a category (%d to more than one); %d of %d gold standard diseases assigned",
+			       this.assigned.cardinality(),nDiseases,multiple.cardinality(),
+			       DiseaseSet.andCardinality(this.assigned,gold),gold.cardinality()));
+    }
+
+
+    /**
+     * Parse the annotation files and classify the diseases in one streaming pass, so
+     * that the annotations of all diseases are never in memory at the same time
+     * (replaces {@link #parseHPOAnnotationFiles} and {@link #parseCategoryFiles}).
+     */
+    public void classifyStreaming() {
+	DiseaseAnnotation.setOnsetTable(new OnsetTable(this.hpo));
+	CategoryParser parser = new CategoryParser();
+	this.categorylist=parser.getDiseaseCategoryList();
+	if (this.sliceOntology)
+	    log.warn("--slice needs the annotations of all diseases and is ignored with --stream");
+	DiseaseCategory.setHPO(this.hpo);
+	Definition.setHPO(this.hpo);
+	StreamingClassifier classifier = new StreamingClassifier(this.hpo,this.categorylist,this.omimmap,this.nThreads);
+	try {
+	    classifier.run(this.pathToHPOAnnot);
+	} catch (InterruptedException e) {
+	    Thread.currentThread().interrupt();
+	    log.error("Interrupted while classifying the annotation files");
+	}
+	for (String err : classifier.getErrors()) {
+	    log.error(err);
+	}
+	DiseaseSet classified = classifier.getClassifiedDiseases();
+	for (Integer mimID:this.omimmap.keySet()) {
+	    if (classified.contains(mimID))
+		continue;
+	    for (OMIMDisease disease:this.omimmap.get(mimID)) {
+		if (!disease.is_modifier() && !disease.is_somatic())
+		    log.error("Could not retrieve disease for mimID: \"" + mimID + "\"");
 	    }
 	}
+	for (DiseaseCategory cat:categorylist) {
+	    this.assigned.addAll(cat.getMembers());
+	}
+	reportAssignments(classified.cardinality());
+    }
+
+    /**
+     * Compute the propagated annotations of all diseases once before the classification,
+     * and report how much memory they need.
+     */
+    private void computeAnnotationProfiles() {
+	long bytes=0L;
+	int dense=0;
+	long terms=0L;
+	for (DiseaseAnnotation da : this.diseasemap.values()) {
+	    TermSet profile = da.getAnnotationProfile(this.hpo);
+	    bytes += profile.getMemoryUsage();
+	    terms += profile.size();
+	    if (profile.isDense())
+		dense++;
+	}
+	log.info(String.format("Annotation profiles (%s): %d diseases, %d dense, %d sparse, %.1f terms per disease, %.1f MB",
+			       TermSet.getRepresentation(),this.diseasemap.size(),dense,this.diseasemap.size()-dense,
+			       this.diseasemap.isEmpty() ? 0.0 : (double)terms/this.diseasemap.size(),
+			       bytes/(1024.0*1024.0)));
+    }
+
+    /**
+     * Replace the HPO by the slice that is needed to evaluate the definitions of all
+     * categories over the annotations of all diseases.
+     */
+    private void sliceHPO() {
+	HashSet<Integer> ruleTerms = new HashSet<Integer>();
+	for (DiseaseCategory cat:categorylist) {
+	    ruleTerms.addAll(cat.getReferencedTerms());
+	}
+	HashSet<Integer> annotationTerms = new HashSet<Integer>();
+	for (DiseaseAnnotation da : this.diseasemap.values()) {
+	    Iterator<AnnotationItem> it = da.get_item_iterator();
+	    while (it.hasNext()) {
+		annotationTerms.add(it.next().getHPOid());
+	    }
+	}
+	this.hpo = this.hpo.slice(ruleTerms,annotationTerms);
     }
 
 
@@ -99,8 +246,10 @@ public class HPOUtil {
 	//String s = ...;
 	String fname="skelnos-inference.txt";
 	Path path = FileSystems.getDefault().getPath(".", fname);
+	/* Write to a temporary file first, so that the report is replaced in one step (see --watch). */
+	Path tmp = FileSystems.getDefault().getPath(".", fname + ".tmp");
 	try {
-	    BufferedWriter writer = Files.newBufferedWriter(path, charset);
+	    BufferedWriter writer = Files.newBufferedWriter(tmp, charset);
 	    DiseaseCategory.setCategoryList(this.categorylist);
 	    for (DiseaseCategory cat:this.categorylist) {
 		//System.out.println("Testing membership in category: " + cat.getName());
@@ -109,6 +258,7 @@ public class HPOUtil {
        	    }
 	    writer.flush();
 	    writer.close();
+	    Files.move(tmp,path,StandardCopyOption.REPLACE_EXISTING);
 	} catch (IOException x) {
 	    System.err.format("IOException: %s%n", x);
 	}
@@ -116,20 +266,216 @@ public class HPOUtil {
 
 
 
+    /**
+     * Watch the annotation directory and reclassify the diseases whose files are
+     * created, modified or deleted: each changed file is parsed again, the disease
+     * is evaluated against all categories, and the report is rewritten. This method
+     * does not return unless the directory becomes inaccessible.
+     */
+    public void watchAnnotationFiles() {
+	Path dir = FileSystems.getDefault().getPath(this.pathToHPOAnnot);
+	if (this.diseasemap==null) {
+	    log.error("--watch cannot be combined with --stream, which does not keep the annotations");
+	    return;
+	}
+	if (!Files.isDirectory(dir)) {
+	    log.error("--watch requires a directory of annotation files: " + this.pathToHPOAnnot);
+	    return;
+	}
+	DiseaseCategory.setDiseaseIndex(null); /* the indices are not updated */
+	DiseaseCategory.setGeneIndex(null);
+	try {
+	    WatchService watcher = FileSystems.getDefault().newWatchService();
+	    try {
+		dir.register(watcher,StandardWatchEventKinds.ENTRY_CREATE,StandardWatchEventKinds.ENTRY_MODIFY,
+			     StandardWatchEventKinds.ENTRY_DELETE);
+		log.info("Watching " + dir + " for changes of annotation files");
+		while (true) {
+		    TreeSet<String> changed = new TreeSet<String>();
+		    WatchKey key = watcher.take();
+		    /* Editors often write a file in several steps; wait until the directory is quiet. */
+		    do {
+			if (!collectChangedFiles(key,dir,changed)) {
+			    log.error("Annotation directory is no longer accessible: " + dir);
+			    return;
+			}
+		    } while ((key=watcher.poll(WATCH_SETTLE_MS,TimeUnit.MILLISECONDS))!=null);
+		    if (changed.isEmpty())
+			continue;
+		    long t0 = System.nanoTime();
+		    reclassify(dir,changed);
+		    this.assigned = new DiseaseSet();
+		    for (DiseaseCategory cat:categorylist) {
+			this.assigned.addAll(cat.getMembers());
+		    }
+		    outputResults();
+		    log.info(String.format("Reclassified %d changed annotation file(s) in %.1f ms",
+					   changed.size(),(System.nanoTime()-t0)/1e6));
+		}
+	    } finally {
+		watcher.close();
+	    }
+	} catch (IOException e) {
+	    log.error("Could not watch " + dir + ": " + e.getMessage());
+	} catch (InterruptedException e) {
+	    Thread.currentThread().interrupt();
+	}
+    }
+
+    /**
+     * Add the names of the annotation files of the events of key to changed. If events
+     * were lost, all annotation files of the directory are added.
+     * @return false if the key is no longer valid
+     */
+    private boolean collectChangedFiles(WatchKey key, Path dir, TreeSet<String> changed) throws IOException {
+	for (WatchEvent<?> event : key.pollEvents()) {
+	    if (event.kind()==StandardWatchEventKinds.OVERFLOW) {
+		log.warn("Missed changes in " + dir + ", reclassifying all annotation files");
+		for (String name : dir.toFile().list()) {
+		    if (isAnnotationFileName(name))
+			changed.add(name);
+		}
+		continue;
+	    }
+	    String name = event.context().toString();
+	    if (isAnnotationFileName(name))
+		changed.add(name);
+	}
+	return key.reset();
+    }
+
+    private static boolean isAnnotationFileName(String name) {
+	return name.startsWith("OMIM") && !name.endsWith("~");
+    }
+
+    /**
+     * Apply the changes of a batch of annotation files to the disease map, then
+     * re-evaluate the affected diseases in all categories and order the results of each
+     * category once for the new disease map.
+     * @param names names of the changed files in dir
+     */
+    private void reclassify(Path dir, Collection<String> names) {
+	LinkedHashSet<Integer> ids = new LinkedHashSet<Integer>();
+	for (String f : names) {
+	    updateDisease(dir.resolve(f),ids);
+	}
+	HashMap<Integer,Integer> position = new HashMap<Integer,Integer>();
+	for (Integer id : this.diseasemap.keySet()) {
+	    position.put(id,position.size());
+	}
+	for (DiseaseCategory cat:categorylist) {
+	    for (Integer id : ids) {
+		if (cat.updateMember(id,this.diseasemap.get(id)))
+		    log.info(String.format("MIM:%06d %s category %s",id,cat.getMembers().contains(id) ? "joined" : "left",cat.getName()));
+	    }
+	    cat.sortResults(position);
+	}
+    }
+
+    /**
+     * Parse one annotation file again (or drop its disease if the file was deleted or
+     * cannot be parsed) and update the disease map.
+     * @param ids the MIM ids of the diseases that were replaced, added or removed are added to ids
+     */
+    private void updateDisease(Path file, Set<Integer> ids) {
+	Integer oldId = HPOAnnotationFileParser.parseMimFromFileName(file.toString());
+	DiseaseAnnotation da=null;
+	if (Files.isRegularFile(file)) {
+	    try {
+		da = new DiseaseAnnotation(file.toAbsolutePath().toString());
+	    } catch (RuntimeException e) {
+		log.error("Could not parse " + file + ": " + e.getMessage());
+	    }
+	    if (da!=null && !da.isValid()) {
+		log.error("Error extracting Disease Annotations for " + file + ": " + da);
+		da=null;
+	    }
+	}
+	if (oldId!=null && (da==null || !oldId.equals(da.getDiseaseId()))) {
+	    this.diseasemap.remove(oldId);
+	    ids.add(oldId);
+	}
+	if (da!=null) {
+	    int r = da.normalizeAnnotations(this.hpo);
+	    if (r>0)
+		log.error(String.format("Removed %d annotation(s) to unknown HPO terms for disease %s",r,da.getDiseaseName()));
+	    addDiseaseGenes(da);
+	    this.diseasemap.put(da.getDiseaseId(),da); /* replaces the old object in place */
+	    ids.add(da.getDiseaseId());
+	}
+    }
+
+    /** Add the germline disease genes of the morbid map to a (re-)parsed disease. */
+    private void addDiseaseGenes(DiseaseAnnotation da) {
+	List<OMIMDisease> lst = this.omimmap.get(da.getDiseaseId());
+	if (lst==null)
+	    return;
+	for (OMIMDisease disease:lst) {
+	    if (disease.is_modifier() || disease.is_somatic())
+		continue;
+	    da.addGenes(disease);
+	}
+    }
+
     public void parseMorbidMap() {
 	MorbidMap map = new MorbidMap(this.pathToMorbidMap);
 	this.omimmap=map.getOMIMDiseaseMap();
     }
 
 
+    /**
+     * Read the HPO, either from the OBO file or from a compiled snapshot. The
+     * --hpo argument may point to either format. If --snapshot was given, the
+     * snapshot is used if it is up to date with the OBO file and rewritten otherwise.
+     */
     public void parseHPOFile() {
-	HPOParser parser = new HPOParser(pathToHpoOBOFile); 
-	this.hpo = new HPO(parser.getTermList());
+	if (HPOSnapshot.isSnapshot(pathToHpoOBOFile)) {
+	    try {
+		HPOSnapshot snap = HPOSnapshot.read(pathToHpoOBOFile);
+		if (snap==null) {
+		    System.err.println("HPOUtil.java: ERROR: Unsupported snapshot version in " + pathToHpoOBOFile);
+		    System.exit(1);
+		}
+		this.hpo = snap.getHPO();
+	    } catch (IOException e) {
+		System.err.println("HPOUtil.java: ERROR: Could not read snapshot: " + e.getMessage());
+		System.exit(1);
+	    }
+	} else if (pathToHpoSnapshot!=null) {
+	    this.hpo = HPOSnapshot.loadOrCompile(pathToHpoOBOFile,pathToHpoSnapshot);
+	} else {
+	    HPOParser parser = new HPOParser(pathToHpoOBOFile); 
+	    this.hpo = new HPO(parser.getTermList());
+	}
     }
 
     public void parseHPOAnnotationFiles() {
-	HPOAnnotationFileParser parser = new HPOAnnotationFileParser(this.pathToHPOAnnot);
-	this.diseasemap = parser.getDiseaseMap();
+	DiseaseAnnotation.setOnsetTable(new OnsetTable(this.hpo));
+	List<String> errors;
+	if (this.lazyAnnotations && !new File(this.pathToHPOAnnot).isDirectory()) {
+	    log.warn("--lazy requires a directory of annotation files; parsing " + this.pathToHPOAnnot + " completely");
+	    this.lazyAnnotations=false;
+	}
+	if (this.lazyAnnotations) {
+	    if (this.pathToAnnotCache!=null)
+		log.warn("The annotation cache is not used with --lazy");
+	    HPOAnnotationFileParser parser = HPOAnnotationFileParser.deferred(this.pathToHPOAnnot,this.hpo);
+	    this.diseasemap = parser.getDiseaseMap();
+	    errors = parser.getErrors();
+	} else if (new File(this.pathToHPOAnnot).isFile() && !HPOAnnotationFileParser.isZipArchive(this.pathToHPOAnnot)) {
+	    PhenotypeAnnotationParser parser = new PhenotypeAnnotationParser(this.pathToHPOAnnot);
+	    this.diseasemap = parser.getDiseaseMap();
+	    errors = parser.getErrors();
+	} else {
+	    HPOAnnotationFileParser parser = new HPOAnnotationFileParser(this.pathToHPOAnnot,this.nThreads,this.pathToAnnotCache);
+	    this.diseasemap = parser.getDiseaseMap();
+	    errors = parser.getErrors();
+	}
+	for (String err : errors) {
+	    log.error(err);
+	}
+	if (!this.lazyAnnotations)
+	    normalizeAnnotations(); /* deferred diseases are normalized when they are parsed */
 	//private HashMap<Integer,List<OMIMDisease> > omimmap=null;
 	for (Integer mimID:this.omimmap.keySet()) {
 	    List<OMIMDisease> lst = this.omimmap.get(mimID);
@@ -144,14 +490,29 @@ public class HPOUtil {
 		    log.error("Could not retrieve disease for mimID: \"" + mimID + "\"");
 		    continue;
 		}
-		ArrayList<String> genelist = disease.getGenes(); 
-		da.addGeneList(genelist);
+		da.addGenes(disease);
 	    }
 	}
     }
 
 
 
+    /**
+     * Map alt_id's and obsolete ids in the annotations to current HPO terms once, so that
+     * the classification never sees ids that are not in the ontology.
+     */
+    private void normalizeAnnotations() {
+	int removed=0;
+	for (DiseaseAnnotation da : this.diseasemap.values()) {
+	    int r = da.normalizeAnnotations(this.hpo);
+	    if (r>0) {
+		log.error(String.format("Removed %d annotation(s) to unknown HPO terms for disease %s",r,da.getDiseaseName()));
+		removed += r;
+	    }
+	}
+	log.info("Removed a total of " + removed + " annotations to unknown HPO terms");
+    }
+
     
      /**
      * Parse the command line using apache's CLI. A copy of the library is included
@@ -163,9 +524,17 @@ public class HPOUtil {
 	try {
 	    Options options = new Options();
 	    options.addOption(new Option("H","help",false,"Shows this help"));
-	    options.addOption(new Option(null,"hpo",true,"Path to HPO OBO file."));
+	    options.addOption(new Option(null,"hpo",true,"Path to HPO OBO file (may be gzipped) or compiled HPO snapshot."));
+	    options.addOption(new Option(null,"snapshot",true,"Path to compiled HPO snapshot (written if missing or out of date)."));
 	    options.addOption(new Option("M","morbidmap",true,"Path to morbidmap file"));
-	    options.addOption(new Option("A","annot",true,"Path to HPO annotation file directory"));
+	    options.addOption(new Option("A","annot",true,"Path to HPO annotation file directory, zip archive of the annotation files, or bulk annotation file (phenotype.hpoa, may be gzipped)"));
+	    options.addOption(new Option(null,"lazy",false,"Parse an annotation file only when a rule needs the annotations of the disease"));
+	    options.addOption(new Option(null,"stream",false,"Classify the diseases while the annotation files are parsed, without keeping all annotations in memory"));
+	    options.addOption(new Option(null,"watch",false,"Keep running and reclassify annotation files when they change"));
+	    options.addOption(new Option(null,"slice",false,"Restrict the HPO to the terms needed by the nosology"));
+	    options.addOption(new Option("t","threads",true,"Number of threads for parsing the annotation files"));
+	    options.addOption(new Option(null,"annot-cache",true,"Path to the binary cache of the parsed annotation files (written if missing or out of date)"));
+	    options.addOption(new Option(null,"profiles",true,"Representation of the disease profiles: sparse, dense or auto (default)"));
 	    
 	    Parser parser = new GnuParser();
 	    CommandLine cmd = parser.parse(options,args);
@@ -177,6 +546,28 @@ public class HPOUtil {
 	    } else {
 		usage();
 	    }
+	    if (cmd.hasOption("snapshot")) {
+		this.pathToHpoSnapshot = cmd.getOptionValue("snapshot");
+	    }
+	    this.sliceOntology = cmd.hasOption("slice");
+	    this.lazyAnnotations = cmd.hasOption("lazy");
+	    this.watchAnnotations = cmd.hasOption("watch");
+	    this.streaming = cmd.hasOption("stream");
+	    if (cmd.hasOption("annot-cache")) {
+		this.pathToAnnotCache = cmd.getOptionValue("annot-cache");
+	    }
+	    if (cmd.hasOption("profiles")) {
+		String rep = cmd.getOptionValue("profiles").toUpperCase();
+		try {
+		    TermSet.setRepresentation(TermSet.Representation.valueOf(rep));
+		} catch (IllegalArgumentException e) {
+		    System.err.println("Unknown profile representation: " + cmd.getOptionValue("profiles"));
+		    usage();
+		}
+	    }
+	    if (cmd.hasOption("t")) {
+		this.nThreads = Integer.parseInt(cmd.getOptionValue("t"));
+	    }
 	    if (cmd.hasOption("M")) {
 		this.pathToMorbidMap=cmd.getOptionValue("M");
 	    } else {
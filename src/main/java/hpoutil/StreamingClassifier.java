@@ -0,0 +1,288 @@
+package hpoutil;
+
+import org.apache.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import hpoutil.ontology.HPO;
+import hpoutil.omim.*;
+import hpoutil.nosology.DiseaseCategory;
+
+/**
+ * Classify the diseases while their annotation files are being parsed, without
+ * keeping the annotations of all diseases in memory. Every disease passes through
+ * four stages, which are joined by bounded queues (a stage that falls behind blocks
+ * the stages before it):
+ * <ol>
+ * <li>parser threads read the annotation files;
+ * <li>one thread normalizes the annotations and adds the genes of the morbid map;
+ * <li>one thread evaluates the disease against the definitions of all categories;
+ * <li>the calling thread records the results in the categories.
+ * </ol>
+ * Only a summary (id, name and genes, see {@link DiseaseAnnotation#getSummary}) of the
+ * category members and of the missed gold standard diseases is kept; all annotations
+ * are dropped once the disease has been classified. At the end, the results are
+ * ordered as {@link DiseaseCategory#findMembers} would order them, so that the report
+ * is the same as without streaming. If several files have the same MIM id, the result
+ * of the last file in path order is kept, as the batch parser keeps the last file.
+ * @author Peter Robinson
+ * @version 0.1 (25 May 2015)
+ */
+public class StreamingClassifier {
+
+    private static Logger log = Logger.getLogger(StreamingClassifier.class.getName());
+
+    /** Capacity of each queue between two stages. */
+    private static final int QUEUE_CAPACITY = 256;
+    /** Put into a queue of diseases after the last disease. */
+    private static final Parsed END_OF_DISEASES = new Parsed(-1,null);
+    /** Put into the result queue after the last result. */
+    private static final Result END_OF_RESULTS = new Result(-1,null,null,null);
+
+    /** A disease and the position of its annotation file in the sorted list of paths. */
+    private static final class Parsed {
+	final int pathIndex;
+	final DiseaseAnnotation disease;
+
+	Parsed(int pathIndex, DiseaseAnnotation disease) {
+	    this.pathIndex=pathIndex;
+	    this.disease=disease;
+	}
+    }
+
+    /** Classification of one disease. */
+    private static final class Result {
+	/** Position of the annotation file in the sorted list of paths. */
+	final int pathIndex;
+	/** MIM id of the disease. */
+	final Integer id;
+	/** Summary of the disease; null if no category needs to keep it. */
+	final DiseaseAnnotation summary;
+	/** member[i]: the disease belongs to the i'th category. */
+	final boolean[] member;
+
+	Result(int pathIndex, Integer id, DiseaseAnnotation summary, boolean[] member) {
+	    this.pathIndex=pathIndex;
+	    this.id=id;
+	    this.summary=summary;
+	    this.member=member;
+	}
+    }
+
+    private final HPO hpo;
+    private final List<DiseaseCategory> categories;
+    /** Key: a MIM ID, value: list of OMIM diseases (from the morbid map). */
+    private final HashMap<Integer,List<OMIMDisease>> omimmap;
+    private final int nThreads;
+    /** Error messages of all stages. */
+    private final List<String> errors = Collections.synchronizedList(new ArrayList<String>());
+    /** MIM ids of the classified diseases. */
+    private final DiseaseSet classified = new DiseaseSet();
+
+    /**
+     * @param hpo the ontology (also set with Definition.setHPO)
+     * @param categories the categories; the results are added to them
+     * @param omimmap the morbid map, used to add the disease genes
+     * @param nThreads number of threads that parse the annotation files
+     */
+    public StreamingClassifier(HPO hpo, List<DiseaseCategory> categories,
+			       HashMap<Integer,List<OMIMDisease>> omimmap, int nThreads) {
+	this.hpo=hpo;
+	this.categories=categories;
+	this.omimmap=omimmap;
+	this.nThreads=Math.max(1,nThreads);
+    }
+
+    /** @return one message for each file or disease that could not be processed. */
+    public List<String> getErrors() { return this.errors; }
+
+    /** @return MIM ids of all diseases that were classified. */
+    public DiseaseSet getClassifiedDiseases() { return this.classified; }
+
+    /**
+     * Parse and classify all annotation files of a directory.
+     * @param directorypath directory with the annotation files (OMIM-123456.tab)
+     */
+    public void run(String directorypath) throws InterruptedException {
+	final List<String> paths = HPOAnnotationFileParser.getHPOAnnotationFiles(directorypath);
+	Collections.sort(paths);
+	log.info("Streaming " + paths.size() + " annotation files with " + this.nThreads + " parser threads");
+	/* idByPath[i]: MIM id of the disease of paths.get(i), -1 if the file was not parsed */
+	final int[] idByPath = new int[paths.size()];
+	java.util.Arrays.fill(idByPath,-1);
+	final BlockingQueue<Parsed> parsed = new ArrayBlockingQueue<Parsed>(QUEUE_CAPACITY);
+	final BlockingQueue<Parsed> annotated = new ArrayBlockingQueue<Parsed>(QUEUE_CAPACITY);
+	final BlockingQueue<Result> results = new ArrayBlockingQueue<Result>(QUEUE_CAPACITY);
+
+	final AtomicInteger nextPath = new AtomicInteger();
+	final AtomicInteger runningParsers = new AtomicInteger(this.nThreads);
+	List<Thread> threads = new ArrayList<Thread>();
+	for (int t=0;t<this.nThreads;t++) {
+	    threads.add(new Thread(new Runnable() {
+		    public void run() {
+			try {
+			    int i;
+			    while ((i=nextPath.getAndIncrement())<paths.size()) {
+				DiseaseAnnotation da = parse(paths.get(i));
+				if (da!=null) {
+				    idByPath[i]=da.getDiseaseId();
+				    parsed.put(new Parsed(i,da));
+				}
+			    }
+			} catch (InterruptedException e) {
+			    Thread.currentThread().interrupt();
+			} finally {
+			    if (runningParsers.decrementAndGet()==0)
+				putQuietly(parsed,END_OF_DISEASES);
+			}
+		    }
+		},"parser-" + t));
+	}
+	threads.add(new Thread(new Runnable() {
+		public void run() {
+		    try {
+			Parsed p;
+			while ((p=parsed.take())!=END_OF_DISEASES) {
+			    try {
+				addAnnotationData(p.disease);
+			    } catch (RuntimeException e) {
+				errors.add("Could not process " + p.disease.getDiseaseId() + ": " + e);
+				continue;
+			    }
+			    annotated.put(p);
+			}
+		    } catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		    } finally {
+			putQuietly(annotated,END_OF_DISEASES);
+		    }
+		}
+	    },"genes"));
+	threads.add(new Thread(new Runnable() {
+		public void run() {
+		    try {
+			Parsed p;
+			while ((p=annotated.take())!=END_OF_DISEASES) {
+			    Result r;
+			    try {
+				r = classify(p);
+			    } catch (RuntimeException e) {
+				errors.add("Could not classify " + p.disease.getDiseaseId() + ": " + e);
+				continue;
+			    }
+			    results.put(r);
+			}
+		    } catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		    } finally {
+			putQuietly(results,END_OF_RESULTS);
+		    }
+		}
+	    },"classifier"));
+	for (Thread t : threads) {
+	    t.setDaemon(true);
+	    t.start();
+	}
+	/* The result sink runs on the calling thread. */
+	HashMap<Integer,Integer> keptPath = new HashMap<Integer,Integer>();
+	Result r;
+	while ((r=results.take())!=END_OF_RESULTS) {
+	    Integer kept = keptPath.get(r.id);
+	    if (kept!=null) {
+		/* Several files with the same MIM id: keep the last file in path order. */
+		errors.add(String.format("Disease %d has more than one annotation file, using %s",
+					 r.id,paths.get(Math.max(kept,r.pathIndex))));
+		if (kept>r.pathIndex)
+		    continue;
+		for (DiseaseCategory cat : this.categories)
+		    cat.updateMember(r.id,null);
+	    }
+	    keptPath.put(r.id,r.pathIndex);
+	    if (r.summary==null)
+		continue;
+	    for (int i=0;i<r.member.length;i++)
+		this.categories.get(i).addResult(r.summary,r.member[i]);
+	}
+	for (Thread t : threads)
+	    t.join();
+	sortResults(idByPath);
+	log.info("Classified " + this.classified.cardinality() + " diseases");
+    }
+
+    /** @return the disease of an annotation file, or null if the file cannot be parsed. */
+    private DiseaseAnnotation parse(String path) {
+	DiseaseAnnotation da;
+	try {
+	    da = new DiseaseAnnotation(path);
+	} catch (RuntimeException e) {
+	    this.errors.add("Error extracting Disease Annotations for " + path + ": " + e);
+	    return null;
+	}
+	if (!da.isValid()) {
+	    this.errors.add("Error extracting Disease Annotations for " + path + ": " + da);
+	    return null;
+	}
+	return da;
+    }
+
+    /** Normalize the annotations and add the genes of the morbid map (second stage). */
+    private void addAnnotationData(DiseaseAnnotation da) {
+	int r = da.normalizeAnnotations(this.hpo);
+	if (r>0)
+	    log.error(String.format("Removed %d annotation(s) to unknown HPO terms for disease %s",r,da.getDiseaseName()));
+	List<OMIMDisease> lst = this.omimmap.get(da.getDiseaseId());
+	if (lst==null)
+	    return;
+	for (OMIMDisease disease:lst) {
+	    if (disease.is_modifier() || disease.is_somatic())
+		continue;
+	    da.addGenes(disease);
+	}
+    }
+
+    /** Evaluate a disease against all categories (third stage). */
+    private Result classify(Parsed p) {
+	DiseaseAnnotation da = p.disease;
+	boolean[] member = new boolean[this.categories.size()];
+	boolean keep=false;
+	for (int i=0;i<member.length;i++) {
+	    DiseaseCategory cat = this.categories.get(i);
+	    member[i] = cat.evaluateCandidateDisease(da);
+	    keep |= member[i] || cat.isGoldStandard(da.getDiseaseId());
+	}
+	this.classified.add(da.getDiseaseId());
+	return new Result(p.pathIndex,da.getDiseaseId(),keep ? da.getSummary() : null,member);
+    }
+
+    /**
+     * Order the results of all categories as they would be ordered in the map that
+     * {@link HPOAnnotationFileParser} creates from the same files (which is iterated by
+     * {@link DiseaseCategory#findMembers}). Only the MIM ids are needed for this.
+     */
+    private void sortResults(int[] idByPath) {
+	HashMap<Integer,Boolean> diseasemap = new HashMap<Integer,Boolean>();
+	for (int id : idByPath) {
+	    if (id>=0)
+		diseasemap.put(id,Boolean.TRUE);
+	}
+	HashMap<Integer,Integer> position = new HashMap<Integer,Integer>();
+	for (Integer id : diseasemap.keySet())
+	    position.put(id,position.size());
+	for (DiseaseCategory cat : this.categories)
+	    cat.sortResults(position);
+    }
+
+    private static <T> void putQuietly(BlockingQueue<T> queue, T item) {
+	try {
+	    queue.put(item);
+	} catch (InterruptedException e) {
+	    Thread.currentThread().interrupt();
+	}
+    }
+}
@@ -0,0 +1,142 @@
+package hpoutil.io;
+
+
+
+import java.io.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * An input stream that reads another stream on a separate thread. The reader thread
+ * fills chunks of up to {@link #CHUNK_SIZE} bytes and hands them over through a small
+ * bounded queue, so that, e.g., the decompression of a gzip file runs in parallel to
+ * the parsing of the data that were already decompressed.
+ * @author Peter Robinson
+ * @version 0.1 (23 May 2015)
+ */
+public class BackgroundInputStream extends InputStream {
+
+    /** Size of the chunks that are passed from the reader thread. */
+    public static final int CHUNK_SIZE = 1<<20;
+    /** Maximum number of chunks that are read ahead. */
+    private static final int QUEUED_CHUNKS = 4;
+    /** Marks the end of the data (or an error of the reader thread). */
+    private static final byte[] END = new byte[0];
+
+    private final InputStream in;
+    private final BlockingQueue<byte[]> queue = new ArrayBlockingQueue<byte[]>(QUEUED_CHUNKS);
+    private final Thread reader;
+    /** Exception of the reader thread, reported to the consumer at the end of the data. */
+    private volatile IOException error=null;
+    private volatile boolean closed=false;
+    /** Chunk that is currently consumed, and the position in it. */
+    private byte[] current=null;
+    private int pos=0;
+    private boolean eof=false;
+
+    /**
+     * Open a file for reading. Files whose name ends with <b>.gz</b> are decompressed
+     * on a separate thread; other files are read directly.
+     */
+    public static InputStream open(String path) throws IOException {
+	if (isGzip(path))
+	    return new BackgroundInputStream(new GZIPInputStream(new FileInputStream(path),1<<16));
+	return new FileInputStream(path);
+    }
+
+    /** @return true if path names a gzip file (by its extension). */
+    public static boolean isGzip(String path) {
+	return path.toLowerCase().endsWith(".gz");
+    }
+
+    /** Start a thread that reads in until the end of the stream. */
+    public BackgroundInputStream(InputStream in) {
+	this.in=in;
+	this.reader = new Thread(new Runnable() {
+		public void run() { readAll(); }
+	    },"BackgroundInputStream");
+	this.reader.setDaemon(true);
+	this.reader.start();
+    }
+
+    private void readAll() {
+	try {
+	    while (!closed) {
+		byte[] chunk = new byte[CHUNK_SIZE];
+		int n=0, r=0;
+		while (n<chunk.length && (r=this.in.read(chunk,n,chunk.length-n))>=0)
+		    n+=r;
+		if (n>0)
+		    this.queue.put(n==chunk.length ? chunk : java.util.Arrays.copyOf(chunk,n));
+		if (r<0)
+		    break;
+	    }
+	} catch (IOException e) {
+	    if (!closed)
+		this.error=e;
+	} catch (InterruptedException e) {
+	    return; /* closed by the consumer */
+	}
+	try {
+	    this.queue.put(END);
+	} catch (InterruptedException e) {
+	    /* closed by the consumer */
+	}
+    }
+
+    /** @return false at the end of the data */
+    private boolean nextChunk() throws IOException {
+	if (this.eof)
+	    return false;
+	try {
+	    this.current = this.queue.take();
+	} catch (InterruptedException e) {
+	    Thread.currentThread().interrupt();
+	    throw new InterruptedIOException("Interrupted while waiting for input");
+	}
+	this.pos=0;
+	if (this.current==END) {
+	    this.eof=true;
+	    if (this.error!=null)
+		throw this.error;
+	    return false;
+	}
+	return true;
+    }
+
+    @Override public int read() throws IOException {
+	if ((this.current==null || this.pos==this.current.length) && !nextChunk())
+	    return -1;
+	return this.current[this.pos++] & 0xff;
+    }
+
+    @Override public int read(byte[] b, int off, int len) throws IOException {
+	if (len==0)
+	    return 0;
+	if ((this.current==null || this.pos==this.current.length) && !nextChunk())
+	    return -1;
+	int n = Math.min(len,this.current.length-this.pos);
+	System.arraycopy(this.current,this.pos,b,off,n);
+	this.pos+=n;
+	return n;
+    }
+
+    @Override public int available() {
+	return this.current==null ? 0 : this.current.length-this.pos;
+    }
+
+    /** Stop the reader thread and close the underlying stream. */
+    @Override public void close() throws IOException {
+	if (this.closed)
+	    return;
+	this.closed=true;
+	this.reader.interrupt();
+	try {
+	    this.reader.join();
+	} catch (InterruptedException e) {
+	    Thread.currentThread().interrupt();
+	}
+	this.in.close();
+    }
+}
@@ -3,24 +3,63 @@ package hpoutil.io;
 
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
+import java.util.Arrays;
 
 import hpoutil.ontology.*;
 
 /**
  * Parse the OBO version of the HPO
- * and create one Term object for each 
+ * and create one Term object for each
  * [Term]
+ * <p>
+ * The file is memory-mapped and scanned byte by byte. HP ids in the
+ * <b>id:</b> and <b>is_a:</b> lines are decoded directly into ints, and
+ * the only Strings that are created are the names and synonyms of the terms.
+ * The parser also records <b>alt_id:</b>, <b>is_obsolete:</b> and <b>replaced_by:</b>,
+ * which are used to map outdated ids in annotations to current terms.
+ * A gzip-compressed file (<b>hp.obo.gz</b>) is decompressed on a separate thread
+ * (see {@link BackgroundInputStream}) and parsed chunk by chunk with the same code.
  * @author Peter Robinson
- * @version 0.1
+ * @version 0.2
  */
 public class HPOParser {
 
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private static final byte[] TERM_STANZA = "[Term]".getBytes(UTF8);
+    private static final byte[] ID_TAG = "id:".getBytes(UTF8);
+    private static final byte[] NAME_TAG = "name:".getBytes(UTF8);
+    private static final byte[] ISA_TAG = "is_a:".getBytes(UTF8);
+    private static final byte[] ALT_ID_TAG = "alt_id:".getBytes(UTF8);
+    private static final byte[] OBSOLETE_TAG = "is_obsolete:".getBytes(UTF8);
+    private static final byte[] REPLACED_BY_TAG = "replaced_by:".getBytes(UTF8);
+    private static final byte[] SYNONYM_TAG = "synonym:".getBytes(UTF8);
+    private static final byte[] TRUE = "true".getBytes(UTF8);
+
     private ArrayList<Term> termlist=null;
 
-    private String current_id=null;
+    /** Are we in a [Term] stanza (and not, e.g., a [Typedef] stanza)? */
+    private boolean inTerm=false;
+    /** Integer representation of the current HP id, -1 if none. */
+    private int current_id=-1;
     private String current_name=null;
-    private ArrayList<String> current_isa=null;
+    /** Integer representations of the parent HP ids of the current term. */
+    private int[] current_isa=new int[8];
+    private int n_isa=0;
+    /** Integer representations of the alt_id's of the current term. */
+    private int[] current_alt=new int[4];
+    private int n_alt=0;
+    private boolean current_obsolete=false;
+    private int current_replaced_by=-1;
+    /** Synonyms of the current term. */
+    private ArrayList<String> current_synonyms=new ArrayList<String>();
+    /** Buffer for decoding term names. */
+    private byte[] scratch=new byte[256];
 
 
     public HPOParser(String path) {
@@ -32,46 +71,218 @@ public class HPOParser {
     public ArrayList<Term> getTermList() { return this.termlist; }
 
     private void parseFile(String path) {
+	if (BackgroundInputStream.isGzip(path)) {
+	    parseCompressedFile(path);
+	    return;
+	}
 	try {
 	    FileInputStream fstream = new FileInputStream(path);
-	    DataInputStream in = new DataInputStream(fstream);
-	    BufferedReader br = new BufferedReader(new InputStreamReader(in));
-	    String line;
-	    current_isa=new ArrayList<String>();
-	    while ((line = br.readLine()) != null)   {
-		if (line.startsWith("[Term]")) {
-		    // Check if we have all infos for a term
-		    if (current_id!=null && current_name!=null) {
-			Term t = new Term(current_name, current_id,current_isa);
-			termlist.add(t);
-			current_id=null;
-			current_name=null;
-			current_isa.clear();
-		    }
-		} else if (line.startsWith("id:")) {
-		    current_id=line.substring(4).trim();
-		} else if (line.startsWith("name:")) {
-		    current_name=line.substring(6).trim();
-		} else if (line.startsWith("is_a:")) {
-		    String ia = line.substring(6).trim();
-		    current_isa.add(ia);
-		}
+	    FileChannel channel = fstream.getChannel();
+	    long size = channel.size();
+	    if (size>Integer.MAX_VALUE) {
+		fstream.close();
+		throw new IOException("OBO file too large to be mapped: " + path + " (" + size + " bytes)");
 	    }
+	    MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY,0,size);
+	    int end = parseLines(buffer,0,(int)size);
+	    if (end<size) /* last line without newline */
+		parseLine(buffer,end,(int)size);
 	    /* also get the very last term*/
-	    if (current_id!=null && current_name!=null) {
-		Term t = new Term(current_name, current_id,current_isa);
-		termlist.add(t);
+	    flushTerm();
+	    fstream.close();
+	} catch (IOException e) {
+	    e.printStackTrace();
+
+	}
+    }
+
+    /**
+     * Parse a gzip-compressed OBO file. The decompressed data arrive in chunks; the
+     * incomplete last line of each chunk is moved to the front of the buffer and
+     * completed by the next chunk.
+     */
+    private void parseCompressedFile(String path) {
+	try {
+	    InputStream in = BackgroundInputStream.open(path);
+	    try {
+		byte[] work = new byte[BackgroundInputStream.CHUNK_SIZE];
+		ByteBuffer buffer = ByteBuffer.wrap(work);
+		int len=0;
+		int n;
+		while ((n=in.read(work,len,work.length-len))>=0) {
+		    len += n;
+		    int end = parseLines(buffer,0,len);
+		    if (end==0 && len==work.length) { /* a line longer than the buffer */
+			work = Arrays.copyOf(work,2*work.length);
+			buffer = ByteBuffer.wrap(work);
+			continue;
+		    }
+		    System.arraycopy(work,end,work,0,len-end);
+		    len -= end;
+		}
+		if (len>0) /* last line without newline */
+		    parseLine(buffer,0,len);
+		flushTerm();
+	    } finally {
+		in.close();
 	    }
-	    in.close();
 	} catch (IOException e) {
 	    e.printStackTrace();
+	}
+    }
 
+    /**
+     * Parse all complete (newline-terminated) lines of buf between start and end.
+     * @return position after the last newline, i.e., the start of an incomplete last line
+     */
+    private int parseLines(ByteBuffer buf, int start, int end) {
+	int lineStart=start;
+	for (int i=start;i<end;i++) {
+	    if (buf.get(i)=='\n') {
+		parseLine(buf,lineStart,i);
+		lineStart=i+1;
+	    }
+	}
+	return lineStart;
+    }
+
+    /**
+     * Parse one line of the OBO file.
+     * @param start position of the first byte of the line
+     * @param end position after the last byte of the line (excluding the newline)
+     */
+    private void parseLine(ByteBuffer buf, int start, int end) {
+	if (end>start && buf.get(end-1)=='\r')
+	    end--;
+	if (end==start)
+	    return;
+	if (buf.get(start)=='[') {
+	    flushTerm();
+	    inTerm=startsWith(buf,start,end,TERM_STANZA);
+	} else if (!inTerm) {
+	    return;
+	} else if (startsWith(buf,start,end,ID_TAG)) {
+	    current_id=decodeHpoID(buf,start+ID_TAG.length,end);
+	} else if (startsWith(buf,start,end,NAME_TAG)) {
+	    current_name=decodeString(buf,start+NAME_TAG.length,end);
+	} else if (startsWith(buf,start,end,ISA_TAG)) {
+	    int p = decodeHpoID(buf,start+ISA_TAG.length,end);
+	    if (p>=0) {
+		if (n_isa==current_isa.length)
+		    current_isa=Arrays.copyOf(current_isa,2*n_isa);
+		current_isa[n_isa++]=p;
+	    }
+	} else if (startsWith(buf,start,end,ALT_ID_TAG)) {
+	    int a = decodeHpoID(buf,start+ALT_ID_TAG.length,end);
+	    if (a>=0) {
+		if (n_alt==current_alt.length)
+		    current_alt=Arrays.copyOf(current_alt,2*n_alt);
+		current_alt[n_alt++]=a;
+	    }
+	} else if (startsWith(buf,start,end,OBSOLETE_TAG)) {
+	    int p = start+OBSOLETE_TAG.length;
+	    while (p<end && buf.get(p)==' ')
+		p++;
+	    current_obsolete=startsWith(buf,p,end,TRUE);
+	} else if (startsWith(buf,start,end,REPLACED_BY_TAG)) {
+	    current_replaced_by=decodeHpoID(buf,start+REPLACED_BY_TAG.length,end);
+	} else if (startsWith(buf,start,end,SYNONYM_TAG)) {
+	    String syn = decodeQuoted(buf,start+SYNONYM_TAG.length,end);
+	    if (syn!=null)
+		current_synonyms.add(syn);
 	}
+    }
 
+    /**
+     * Create a Term object if we have all infos for a term, and reset the
+     * state for the next stanza.
+     */
+    private void flushTerm() {
+	if (current_id>=0 && current_name!=null) {
+	    Term t = new Term(current_name,current_id,Arrays.copyOf(current_isa,n_isa),
+			      Arrays.copyOf(current_alt,n_alt),current_obsolete,current_replaced_by,
+			      current_synonyms.toArray(new String[current_synonyms.size()]));
+	    termlist.add(t);
+	}
+	current_id=-1;
+	current_name=null;
+	n_isa=0;
+	n_alt=0;
+	current_obsolete=false;
+	current_replaced_by=-1;
+	current_synonyms.clear();
+    }
 
+    private static boolean startsWith(ByteBuffer buf, int start, int end, byte[] prefix) {
+	if (end-start<prefix.length)
+	    return false;
+	for (int i=0;i<prefix.length;i++) {
+	    if (buf.get(start+i)!=prefix[i])
+		return false;
+	}
+	return true;
+    }
 
+    /**
+     * Decode an id such as HP:0001234 (optionally preceded by whitespace and
+     * followed by a comment, e.g., HP:0001234 ! Some name) into 1234.
+     * @return the integer representation of the id, or -1 if it is not an HP id
+     */
+    private static int decodeHpoID(ByteBuffer buf, int pos, int end) {
+	while (pos<end && buf.get(pos)==' ')
+	    pos++;
+	if (end-pos<10 || buf.get(pos)!='H' || buf.get(pos+1)!='P' || buf.get(pos+2)!=':')
+	    return -1;
+	int id=0;
+	for (int i=pos+3;i<pos+10;i++) {
+	    int d = buf.get(i)-'0';
+	    if (d<0 || d>9)
+		return -1;
+	    id = 10*id+d;
+	}
+	if (pos+10<end && buf.get(pos+10)!=' ' && buf.get(pos+10)!='\t')
+	    return -1; /* more than 7 digits */
+	return id;
     }
 
+    /**
+     * Decode the quoted text of a line such as
+     * synonym: "Short fingers" EXACT [], where \" is an escaped quote.
+     * @return the text between the quotes, or null if there is none
+     */
+    private String decodeQuoted(ByteBuffer buf, int pos, int end) {
+	while (pos<end && buf.get(pos)!='"')
+	    pos++;
+	if (pos==end)
+	    return null;
+	pos++;
+	int len=0;
+	for (int i=pos;i<end;i++) {
+	    byte b = buf.get(i);
+	    if (b=='\\' && i+1<end) {
+		b = buf.get(++i);
+	    } else if (b=='"') {
+		return new String(scratch,0,len,UTF8);
+	    }
+	    if (len==scratch.length)
+		scratch=Arrays.copyOf(scratch,2*len);
+	    scratch[len++]=b;
+	}
+	return null; /* no closing quote */
+    }
 
+    /** Decode the trimmed UTF-8 text between pos and end. */
+    private String decodeString(ByteBuffer buf, int pos, int end) {
+	while (pos<end && buf.get(pos)==' ')
+	    pos++;
+	while (end>pos && buf.get(end-1)==' ')
+	    end--;
+	int len=end-pos;
+	if (len>scratch.length)
+	    scratch=new byte[2*len];
+	for (int i=0;i<len;i++)
+	    scratch[i]=buf.get(pos+i);
+	return new String(scratch,0,len,UTF8);
+    }
 
 }
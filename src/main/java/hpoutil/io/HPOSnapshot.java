@@ -0,0 +1,277 @@
+package hpoutil.io;
+
+
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.zip.CRC32;
+
+import org.apache.log4j.Logger;
+
+import hpoutil.ontology.*;
+
+/**
+ * Binary snapshot of a compiled {@link HPO} object (term ids, names, is_a links in
+ * topological order, alt_id's, synonyms and obsolete terms and, optionally, the {@link AncestorIndex}). A snapshot is written
+ * once from an OBO file and can then be loaded with a single memory-mapped read,
+ * without parsing the OBO text or recomputing the dense numbering and the closure.
+ * The snapshot records the size and CRC32 checksum of the OBO file it was compiled
+ * from, so that a stale snapshot can be detected.
+ * <p>
+ * Layout (big endian): magic, version, source size, source checksum, number of terms n,
+ * number of is_a links m, ids[n], parentOffsets[n+1], parentTargets[m],
+ * nameOffsets[n+1], name bytes (UTF-8), altOffsets[n+1], altIds, obsolete flags[n],
+ * replacedBy[n], synonymOffsets[n+1], synonym byte offsets, synonym bytes (UTF-8),
+ * closure flag, closure rows.
+ * @author Peter Robinson
+ * @version 0.1 (8 May 2015)
+ */
+public class HPOSnapshot {
+
+    private static Logger log = Logger.getLogger(HPOSnapshot.class.getName());
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    /** First eight bytes of every snapshot file. */
+    private static final byte[] MAGIC = { 'H','P','O','S','N','A','P',0 };
+    /** Incremented whenever the layout changes; older snapshots are then recompiled. */
+    public static final int VERSION = 3;
+
+    /** Size of the OBO file the snapshot was compiled from. */
+    private long sourceSize;
+    /** CRC32 checksum of the OBO file the snapshot was compiled from. */
+    private long sourceChecksum;
+    private HPO hpo=null;
+
+    private HPOSnapshot() {}
+
+    /** @return the ontology stored in the snapshot. */
+    public HPO getHPO() { return this.hpo; }
+
+    public long getSourceSize() { return this.sourceSize; }
+
+    public long getSourceChecksum() { return this.sourceChecksum; }
+
+    /**
+     * @return true if the file at path starts with the snapshot magic bytes (the version is not checked).
+     */
+    public static boolean isSnapshot(String path) {
+	byte[] head = new byte[MAGIC.length];
+	try {
+	    DataInputStream in = new DataInputStream(new FileInputStream(path));
+	    try {
+		in.readFully(head);
+	    } finally {
+		in.close();
+	    }
+	} catch (IOException e) {
+	    return false;
+	}
+	return java.util.Arrays.equals(head,MAGIC);
+    }
+
+    /**
+     * @return CRC32 checksum of the contents of the file
+     */
+    public static long checksum(String path) throws IOException {
+	CRC32 crc = new CRC32();
+	byte[] buffer = new byte[1<<16];
+	FileInputStream in = new FileInputStream(path);
+	try {
+	    int n;
+	    while ((n=in.read(buffer))>0)
+		crc.update(buffer,0,n);
+	} finally {
+	    in.close();
+	}
+	return crc.getValue();
+    }
+
+    /**
+     * Load the snapshot at snapshotPath if it exists and was compiled from the current
+     * version of oboPath; otherwise parse oboPath and (re)write the snapshot.
+     */
+    public static HPO loadOrCompile(String oboPath, String snapshotPath) {
+	try {
+	    long size = new File(oboPath).length();
+	    long crc = checksum(oboPath);
+	    if (new File(snapshotPath).exists()) {
+		HPOSnapshot snap = read(snapshotPath);
+		if (snap!=null && snap.sourceSize==size && snap.sourceChecksum==crc) {
+		    log.info("Loaded compiled HPO from " + snapshotPath);
+		    return snap.hpo;
+		}
+		log.info("Snapshot " + snapshotPath + " is out of date, recompiling " + oboPath);
+	    }
+	    HPOParser parser = new HPOParser(oboPath);
+	    HPO hpo = new HPO(parser.getTermList());
+	    write(hpo,size,crc,snapshotPath);
+	    log.info("Wrote compiled HPO to " + snapshotPath);
+	    return hpo;
+	} catch (IOException e) {
+	    log.error("Could not load or write HPO snapshot: " + e.getMessage());
+	    System.exit(1);
+	}
+	return null; /* not reached */
+    }
+
+    /**
+     * Write a snapshot of hpo to path.
+     * @param sourceSize size of the OBO file hpo was parsed from
+     * @param sourceChecksum CRC32 of the OBO file hpo was parsed from
+     */
+    public static void write(HPO hpo, long sourceSize, long sourceChecksum, String path) throws IOException {
+	int n = hpo.getTermCount();
+	int[] parentOffsets = new int[n+1];
+	for (int i=0;i<n;i++)
+	    parentOffsets[i+1] = parentOffsets[i] + hpo.getTermAt(i).getParentIdArray().length;
+	byte[][] names = new byte[n][];
+	int[] nameOffsets = new int[n+1];
+	for (int i=0;i<n;i++) {
+	    names[i] = hpo.getTermAt(i).getName().getBytes(UTF8);
+	    nameOffsets[i+1] = nameOffsets[i] + names[i].length;
+	}
+	DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(path),1<<16));
+	try {
+	    out.write(MAGIC);
+	    out.writeInt(VERSION);
+	    out.writeLong(sourceSize);
+	    out.writeLong(sourceChecksum);
+	    out.writeInt(n);
+	    out.writeInt(parentOffsets[n]);
+	    for (int i=0;i<n;i++)
+		out.writeInt(hpo.getTermAt(i).getID());
+	    for (int o : parentOffsets)
+		out.writeInt(o);
+	    for (int i=0;i<n;i++) {
+		for (int p : hpo.getTermAt(i).getParentIdArray())
+		    out.writeInt(hpo.getIndex(p));
+	    }
+	    for (int o : nameOffsets)
+		out.writeInt(o);
+	    for (byte[] b : names)
+		out.write(b);
+	    int nalt=0;
+	    out.writeInt(nalt);
+	    for (int i=0;i<n;i++) {
+		nalt += hpo.getTermAt(i).getAltIds().length;
+		out.writeInt(nalt);
+	    }
+	    for (int i=0;i<n;i++) {
+		for (int a : hpo.getTermAt(i).getAltIds())
+		    out.writeInt(a);
+	    }
+	    for (int i=0;i<n;i++)
+		out.writeBoolean(hpo.getTermAt(i).isObsolete());
+	    for (int i=0;i<n;i++)
+		out.writeInt(hpo.getTermAt(i).getReplacedBy());
+	    int nsyn=0;
+	    out.writeInt(nsyn);
+	    for (int i=0;i<n;i++) {
+		nsyn += hpo.getTermAt(i).getSynonyms().length;
+		out.writeInt(nsyn);
+	    }
+	    byte[][] synonyms = new byte[nsyn][];
+	    int s=0;
+	    for (int i=0;i<n;i++) {
+		for (String syn : hpo.getTermAt(i).getSynonyms())
+		    synonyms[s++] = syn.getBytes(UTF8);
+	    }
+	    int synBytes=0;
+	    out.writeInt(synBytes);
+	    for (byte[] b : synonyms) {
+		synBytes += b.length;
+		out.writeInt(synBytes);
+	    }
+	    for (byte[] b : synonyms)
+		out.write(b);
+	    AncestorIndex ai = hpo.getAncestorIndex();
+	    out.writeBoolean(ai!=null);
+	    if (ai!=null) {
+		for (int i=0;i<n;i++) {
+		    for (long w : ai.getRow(i))
+			out.writeLong(w);
+		}
+	    }
+	} finally {
+	    out.close();
+	}
+    }
+
+    /**
+     * Map the snapshot file into memory and build the HPO object from it.
+     * @return the snapshot, or null if the file is not a snapshot of the current {@link #VERSION}
+     */
+    public static HPOSnapshot read(String path) throws IOException {
+	FileInputStream fstream = new FileInputStream(path);
+	try {
+	    FileChannel channel = fstream.getChannel();
+	    MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY,0,channel.size());
+	    byte[] magic = new byte[MAGIC.length];
+	    if (buf.remaining()<MAGIC.length+4)
+		return null;
+	    buf.get(magic);
+	    if (!java.util.Arrays.equals(magic,MAGIC) || buf.getInt()!=VERSION)
+		return null;
+	    HPOSnapshot snap = new HPOSnapshot();
+	    snap.sourceSize = buf.getLong();
+	    snap.sourceChecksum = buf.getLong();
+	    int n = buf.getInt();
+	    int m = buf.getInt();
+	    int[] ids = getInts(buf,n);
+	    int[] parentOffsets = getInts(buf,n+1);
+	    int[] parentTargets = getInts(buf,m);
+	    int[] nameOffsets = getInts(buf,n+1);
+	    byte[] nameBytes = new byte[nameOffsets[n]];
+	    buf.get(nameBytes);
+	    int[] altOffsets = getInts(buf,n+1);
+	    int[] altIds = getInts(buf,altOffsets[n]);
+	    byte[] obsolete = new byte[n];
+	    buf.get(obsolete);
+	    int[] replacedBy = getInts(buf,n);
+	    int[] synOffsets = getInts(buf,n+1);
+	    int[] synByteOffsets = getInts(buf,synOffsets[n]+1);
+	    byte[] synBytes = new byte[synByteOffsets[synOffsets[n]]];
+	    buf.get(synBytes);
+	    AncestorIndex ai = null;
+	    if (buf.get()!=0) {
+		long[][] rows = new long[n][];
+		java.nio.LongBuffer lbuf = buf.asLongBuffer();
+		for (int i=0;i<n;i++) {
+		    rows[i] = new long[(i>>>6)+1];
+		    lbuf.get(rows[i]);
+		}
+		ai = new AncestorIndex(rows);
+	    }
+	    Term[] terms = new Term[n];
+	    for (int i=0;i<n;i++) {
+		String name = new String(nameBytes,nameOffsets[i],nameOffsets[i+1]-nameOffsets[i],UTF8);
+		int[] isa = new int[parentOffsets[i+1]-parentOffsets[i]];
+		for (int k=0;k<isa.length;k++)
+		    isa[k] = ids[parentTargets[parentOffsets[i]+k]];
+		int[] alt = java.util.Arrays.copyOfRange(altIds,altOffsets[i],altOffsets[i+1]);
+		String[] syn = new String[synOffsets[i+1]-synOffsets[i]];
+		for (int k=0;k<syn.length;k++) {
+		    int s = synOffsets[i]+k;
+		    syn[k] = new String(synBytes,synByteOffsets[s],synByteOffsets[s+1]-synByteOffsets[s],UTF8);
+		}
+		terms[i] = new Term(name,ids[i],isa,alt,obsolete[i]!=0,replacedBy[i],syn);
+	    }
+	    snap.hpo = new HPO(terms,parentOffsets,parentTargets,ai);
+	    return snap;
+	} finally {
+	    fstream.close();
+	}
+    }
+
+    /** Bulk-read len ints from the current position of buf and advance the position. */
+    private static int[] getInts(ByteBuffer buf, int len) {
+	int[] a = new int[len];
+	buf.asIntBuffer().get(a);
+	buf.position(buf.position()+4*len);
+	return a;
+    }
+
+}
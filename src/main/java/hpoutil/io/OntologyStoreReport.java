@@ -0,0 +1,27 @@
+package hpoutil.io;
+
+
+import hpoutil.ontology.OntologyStore;
+
+/**
+ * Load several releases of the HPO into an {@link OntologyStore} and report the
+ * memory used by the store. It lives in the io package because it needs the
+ * {@link HPOParser}.
+ * Usage: OntologyStoreReport hp1.obo hp2.obo ...
+ * @author Peter Robinson
+ * @version 0.1 (13 May 2015)
+ */
+public class OntologyStoreReport {
+
+    public static void main(String[] args) {
+	OntologyStore store = new OntologyStore();
+	for (String path : args) {
+	    HPOParser parser = new HPOParser(path);
+	    store.addRelease(path,parser.getTermList());
+	}
+	System.out.println(String.format("%d releases, shared term data %.1f MB, per-release data %.1f MB",
+					 store.getVersions().size(),
+					 store.getSharedMemoryUsage()/(1024.0*1024.0),
+					 store.getReleaseMemoryUsage()/(1024.0*1024.0)));
+    }
+}
@@ -0,0 +1,58 @@
+package hpoutil.io;
+
+
+import java.util.ArrayList;
+
+import hpoutil.ontology.HPO;
+import hpoutil.ontology.Term;
+import hpoutil.ontology.TermTextIndex;
+
+/**
+ * Throughput benchmark for {@link TermTextIndex}: look up every name and synonym
+ * of the HPO, and every prefix of length 4 of them. It lives in the io package
+ * because it needs the {@link HPOParser}.
+ * Usage: TermTextIndexBenchmark path/to/hp.obo [rounds]
+ * @author Peter Robinson
+ * @version 0.1 (12 May 2015)
+ */
+public class TermTextIndexBenchmark {
+
+    public static void main(String[] args) {
+	if (args.length<1) {
+	    System.err.println("Usage: TermTextIndexBenchmark hp.obo [rounds]");
+	    System.exit(1);
+	}
+	int rounds = args.length>1 ? Integer.parseInt(args[1]) : 5;
+	HPOParser parser = new HPOParser(args[0]);
+	HPO hpo = new HPO(parser.getTermList(),false);
+	long t0 = System.nanoTime();
+	TermTextIndex index = new TermTextIndex(hpo);
+	long t1 = System.nanoTime();
+	System.out.println(String.format("Indexed %d texts of %d terms in %d ms",
+					 index.size(),hpo.getTermCount(),(t1-t0)/1000000L));
+	ArrayList<String> queries = new ArrayList<String>();
+	for (int i=0;i<hpo.getTermCount();i++) {
+	    Term t = hpo.getTermAt(i);
+	    if (t.isObsolete())
+		continue;
+	    queries.add(t.getName());
+	    for (String syn : t.getSynonyms())
+		queries.add(syn);
+	}
+	for (int r=0;r<rounds;r++) {
+	    long hits=0;
+	    long start = System.nanoTime();
+	    for (String q : queries)
+		hits += index.lookup(q).length;
+	    long exactNanos = System.nanoTime()-start;
+	    start = System.nanoTime();
+	    for (String q : queries)
+		hits += index.lookupPrefix(q.length()>4 ? q.substring(0,4) : q,10).size();
+	    long prefixNanos = System.nanoTime()-start;
+	    System.out.println(String.format("Round %d: %d exact lookups %.2f us/op (%.0f ops/s), prefix lookups %.2f us/op (%.0f ops/s), %d hits",
+					     r+1,queries.size(),
+					     exactNanos/1000.0/queries.size(),queries.size()*1e9/exactNanos,
+					     prefixNanos/1000.0/queries.size(),queries.size()*1e9/prefixNanos,hits));
+	}
+    }
+}
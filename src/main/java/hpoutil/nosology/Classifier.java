@@ -3,6 +3,8 @@ package hpoutil.nosology;
 
 import hpoutil.ontology.*;
 import hpoutil.omim.DiseaseAnnotation;
+import hpoutil.omim.GeneDiseaseIndex;
+import hpoutil.omim.TermDiseaseIndex;
 import java.io.*;
 
 public interface Classifier {
@@ -24,5 +26,17 @@ public interface Classifier {
 
     public  void printDefinition(Writer out) throws IOException;
 
+    /** Add all HPO terms (Integer representation) used by this classifier to terms. */
+    public void collectTerms(java.util.Collection<Integer> terms);
+
+    /**
+     * @param index inverted index of the diseases, built with the current HPO (can be null)
+     * @param genes inverted index from genes to diseases (can be null)
+     * @return sorted MIM ids of all diseases that can satisfy this classifier (a superset
+     * of the diseases for which {@link #satisfiesDefinition} is true), or null if the
+     * classifier cannot restrict the candidates with the indices
+     */
+    public int[] getCandidates(TermDiseaseIndex index, GeneDiseaseIndex genes);
+
 
 }
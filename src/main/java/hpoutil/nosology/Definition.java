@@ -13,6 +13,9 @@ import java.io.IOException;
 
 import hpoutil.ontology.*;
 import hpoutil.omim.DiseaseAnnotation;
+import hpoutil.omim.GeneDiseaseIndex;
+import hpoutil.omim.SortedInts;
+import hpoutil.omim.TermDiseaseIndex;
 
 /**
  * This class represents a definition of a disease category.
@@ -26,6 +29,8 @@ public class Definition implements Classifier{
 
 
     private ArrayList<String> diseasegenes=null;
+    /** Sorted ids of {@link #diseasegenes} (see {@link DiseaseAnnotation#getGeneRegistry}). */
+    private int[] diseaseGeneIds=null;
     private ArrayList<Integer> featurelist=null;
     private ArrayList<Integer>notFeaturelist=null;
     /** At least one of these features must be present */
@@ -38,6 +43,29 @@ public class Definition implements Classifier{
     private ArrayList<Integer> N;
     private Integer neonatalFeature=null;
 
+    /** Descendant sets of the terms in {@link #featurelist} (same order). */
+    private TermSet[] featureSets=null;
+    /** Dense indices of the (resolved) terms in {@link #featurelist}; -1 for unknown terms. */
+    private int[] featureIndices=null;
+    /** The (resolved) terms in {@link #notFeaturelist}, tested against the disease profile in one step. */
+    private TermSet notFeatureMask=null;
+    /** The (resolved) terms in {@link #optionalFeaturelist}, tested against the disease profile in one step. */
+    private TermSet optionalFeatureMask=null;
+    /** Dense index of the first term in {@link #featureNlist} (the only one that is checked); -1 if unknown. */
+    private int featureNIndex=-1;
+    /** Dense index of {@link #neonatalFeature}; -1 if unknown or not set. */
+    private int neonatalFeatureIndex=-1;
+    /** Descendant sets of the terms in {@link #featureNlist} (same order). */
+    private TermSet[] featureNSets=null;
+    /** Descendant set of {@link #neonatalFeature} */
+    private TermSet neonatalFeatureSet=null;
+    /**
+     * The HPO object the descendant sets were built from. Written last by
+     * {@link #compileTermSets} and read without locking, so it is volatile: a thread that
+     * sees the current HPO here also sees the compiled sets.
+     */
+    private volatile HPO compiledHPO=null;
+
      /** reference to the HPO object */
     private static HPO hpo;
 
@@ -97,13 +125,7 @@ public class Definition implements Classifier{
      * @param disease Disease to be tested for having at least one of the disease genes for this category
      */
     private boolean hasDiseaseGene(DiseaseAnnotation disease) {
-	for (String symbol:this.diseasegenes) {
-	    if (disease.hasDiseaseGene(symbol)) {
-		return true;
-	    }
-	}
-	/* If we get here, no match was found */
-	return false;
+	return disease.hasAnyDiseaseGene(this.diseaseGeneIds);
     }
 
 
@@ -128,23 +150,11 @@ public class Definition implements Classifier{
      * category XYZ has NOT sneezing, and disease abc is annotated to 
      * sneezing, this function will return true. In that case, the
      * disease should be rejected.
-     * @param disease The disease to be evaluated for category membership
-     * @param not An HPO term that Category members CANNOT have
+     * @param profile The propagated annotations of the disease to be evaluated for category membership
+     * @param not HPO terms that Category members CANNOT have
      */
-    private boolean hasNOTannotation(DiseaseAnnotation disease, Integer not) {
-	ArrayList<Integer> positiveannotations = disease.getPositiveAnnotations();
-	for (Integer pos:positiveannotations) {
-	    try{
-		if (Definition.hpo.isAncestorOf(not,pos)){
-		    return true;
-		}
-	    } catch (IllegalArgumentException e) {
-		log.error(String.format("Could not find HP:%07d for disease %s",pos,disease.getDiseaseName()));
-		continue;
-	    }
-	}
-	/* If we get here, there was no contradiction. */
-	return false;
+    private boolean hasNOTannotation(TermSet profile, TermSet not) {
+	return profile.intersects(not);
     }
 
 
@@ -157,11 +167,10 @@ public class Definition implements Classifier{
      * (i.e., If a disease has a NOT feature, then it cannot belong to this category).
      */
     private boolean satisfiesNotFeatureDefinition(DiseaseAnnotation disease) {
-	for (Integer not: notFeaturelist) {
-	    if ( hasNOTannotation(disease, not) )
-		return false;
-	}
-	return true;
+	if (notFeatureMask.size()==0)
+	    return true;
+	TermSet profile = disease.getAnnotationProfile(Definition.hpo);
+	return ! hasNOTannotation(profile, notFeatureMask);
     }
 
 
@@ -170,27 +179,10 @@ public class Definition implements Classifier{
      * This function is used to test whether a disease has a feature with neonatal onset.
      * Note that we include "Congenital onset"
      * @param disease The disease to be tested
-     * @param feature an HPO term (represented as Integer) that should be present with neonatal onset
+     * @param feature The set of an HPO term and its descendants, one of which should be present with neonatal onset
      */
-    private boolean hasNeonatalFeature(DiseaseAnnotation disease, Integer feature) {
-
-	ArrayList<Integer> neonatalAnnotations = disease.getNeonatalAnnotations();
-	ArrayList<Integer> congenitalAnnotations = disease.getCongenitalAnnotations();
-	if (neonatalAnnotations==null)
-	    neonatalAnnotations=congenitalAnnotations;
-	else
-	    neonatalAnnotations.addAll(congenitalAnnotations);
-	for (Integer neo : neonatalAnnotations) {
-	    try{
-		if (Definition.hpo.isAncestorOf(feature,neo)){
-		    return true;
-		} 
-	    } catch (IllegalArgumentException e) {
-		log.error(String.format("Could not find HP:%07d for disease %s",neo,disease.getDiseaseName()));
-		continue;
-	    }
-	}
-	return false; /** did not find a neonatal annotation. */
+    private boolean hasNeonatalFeature(DiseaseAnnotation disease, TermSet feature) {
+	return feature.containsAny(disease.getNeonatalOrCongenitalIds());
     }
 
 
@@ -203,7 +195,7 @@ public class Definition implements Classifier{
     private boolean satisfiesNeonatalDefinition(DiseaseAnnotation disease) {
 	// Check for neonatalfeatures
 	if (this.neonatalFeature!=null) {
-	    return hasNeonatalFeature(disease,this.neonatalFeature);
+	    return hasNeonatalFeature(disease,this.neonatalFeatureSet);
 	} else { // trivial, the definition has no neonatal feature.
 	    return true; // 
 	}
@@ -218,7 +210,7 @@ public class Definition implements Classifier{
 	    int i;
 	    int len = featureNlist.size();
 	    for (i=0;i<len;i++) {
-		Integer feat = featureNlist.get(i);
+		TermSet feat = featureNSets[i];
 		Integer n = N.get(i);
 		return  hasAtLeastNDescendentFeatures(disease,feat,n);
 	    }
@@ -229,25 +221,14 @@ public class Definition implements Classifier{
 
 
     private boolean hasFeatures(DiseaseAnnotation disease) { 
+	if (this.featureSets.length==1) { /* the common case, a lookup in the profile */
+	    int yes = this.featureIndices[0];
+	    return yes>=0 && disease.getAnnotationProfile(Definition.hpo).containsIndex(yes);
+	}
 	int n_found=0;
-	for (Integer yes: this.featurelist) {
-	    //if (verbose) {
-	    //	System.out.println(String.format("-required- HP:%07d - %s",yes,DiseaseCategory.hpo.getTermName(yes)));
-	    // }
-	    ArrayList<Integer> positiveannotations = disease.getPositiveAnnotations();
-	    for (Integer pos:positiveannotations) {
-		//	if (verbose) {
-		//  System.out.println(String.format("-annot-HP:%07d - %s",pos,DiseaseCategory.hpo.getTermName(pos)));
-		//}
-		try{
-		    if (Definition.hpo.isAncestorOf(yes,pos)){
-			n_found++;
-		    } 
-		 } catch (IllegalArgumentException e) {
-		     log.error(String.format("Could not find HP:%07d for disease %s",pos,disease.getDiseaseName()));
-		     continue;
-		 }
-	     }
+	int[] positiveannotations = disease.getPositiveIds();
+	for (TermSet yes: this.featureSets) {
+	    n_found += yes.countMembers(positiveannotations);
 	}
 	if (n_found<this.featurelist.size())
 	    return false;
@@ -256,23 +237,71 @@ public class Definition implements Classifier{
     }
 
     private boolean hasOptionalFeatures(DiseaseAnnotation disease) {
-	for (Integer optf : this.optionalFeaturelist) {
-	    ArrayList<Integer> positiveannotations = disease.getPositiveAnnotations();
-	    for (Integer pos:positiveannotations) {
-		try{
-		    if (Definition.hpo.isAncestorOf(optf,pos)){
-			return true;
-		    } 
-		} catch (IllegalArgumentException e) {
-		    log.error(String.format("Could not find HP:%07d for disease %s",pos,disease.getDiseaseName()));
-		    continue;
-		}
-	    }
+	TermSet profile = disease.getAnnotationProfile(Definition.hpo);
+	return profile.intersects(this.optionalFeatureMask);
+    }
+
+    /**
+     * Expand each HPO term of the definition into the set of itself and its descendants,
+     * so that the checks in {@link #satisfiesDefinition} are membership tests. The sets
+     * are rebuilt if a different HPO object has been set in the meantime.
+     */
+    private synchronized void compileTermSets() {
+	HPO current = Definition.hpo;
+	if (this.compiledHPO==current)
+	    return;
+	this.diseaseGeneIds=DiseaseAnnotation.getGeneRegistry().intern(this.diseasegenes);
+	this.featureSets=getDescendantSets(this.featurelist);
+	this.featureIndices=getIndices(this.featurelist);
+	this.notFeatureMask=Definition.hpo.getTermSet(getIndices(this.notFeaturelist));
+	this.optionalFeatureMask=Definition.hpo.getTermSet(getIndices(this.optionalFeaturelist));
+	this.featureNSets=getDescendantSets(this.featureNlist);
+	this.featureNIndex = this.featureNlist.isEmpty() ? -1 : Definition.hpo.resolveIndex(this.featureNlist.get(0));
+	if (this.neonatalFeature!=null) {
+	    this.neonatalFeatureSet=getDescendantSet(this.neonatalFeature);
+	    this.neonatalFeatureIndex=Definition.hpo.resolveIndex(this.neonatalFeature);
+	}
+	this.compiledHPO=current; /* last, see compiledHPO */
+    }
+
+    private TermSet[] getDescendantSets(ArrayList<Integer> lst) {
+	TermSet[] sets = new TermSet[lst.size()];
+	for (int i=0;i<sets.length;i++) {
+	    sets[i]=getDescendantSet(lst.get(i));
 	}
-	return false; /* If we get here, we could not find anything */
+	return sets;
+    }
+
+    private int[] getIndices(ArrayList<Integer> lst) {
+	int[] indices = new int[lst.size()];
+	for (int i=0;i<indices.length;i++) {
+	    indices[i]=Definition.hpo.getIndex(resolve(lst.get(i)));
+	}
+	return indices;
+    }
+
+    private TermSet getDescendantSet(Integer id) {
+	return Definition.hpo.getDescendantSet(resolve(id));
+    }
+
+    /**
+     * @return the current id of a term used in the definition (alt_id's and obsolete
+     * terms are replaced), or the id itself if it is unknown.
+     */
+    private Integer resolve(Integer id) {
+	int current = Definition.hpo.resolve(id);
+	if (current<0) {
+	    log.error(String.format("Could not find HP:%07d used in definition",id));
+	    current = id;
+	} else if (current!=id) {
+	    log.warn(String.format("HP:%07d used in definition is outdated, using HP:%07d",id,current));
+	}
+	return current;
     }
 
     public boolean satisfiesDefinition(DiseaseAnnotation disease) { 
+	if (this.compiledHPO!=Definition.hpo)
+	    compileTermSets();
 	/*if (disease.MIMid().equals(187601))
 	    this.verbose=true;
 	else
@@ -314,32 +343,68 @@ public class Definition implements Classifier{
 
      /**
      * @param disease A disease to be tested
-     * @param feat An HPO feature (Integer coding of its id, e.g., HP:0001234 would be 1234)
+     * @param feat The set of an HPO feature and all of its descendents
      * @param N minimum number of annotations the disease must have to feat or descendents thereof.
      * @return true if the disease has at least N annotations to HPO term feat or any of its ancestors, otherwise false.
      */
-    private boolean hasAtLeastNDescendentFeatures(DiseaseAnnotation disease, Integer feat, Integer N) {
-	//String name = DiseaseCategory.hpo.getTermName(feat);
-	//String s =String.format("HP:%07d: %s",feat,name); 
-	//System.out.println("Looking for at least " + n + " annotations for " + s + " in " + disease.getDiseaseName());
-	ArrayList<Integer> positiveannotations = disease.getPositiveAnnotations();
-	int n_found=0;
-	for (Integer pos:positiveannotations) {
-	    try{
-		if (Definition.hpo.isAncestorOf(feat,pos)){
-		    n_found++;
-		} 
-	    } catch (IllegalArgumentException e) {
-		log.error(String.format("Could not find HP:%07d for disease %s",pos,disease.getDiseaseName()));
-		continue;
-	    }
-	}
+    private boolean hasAtLeastNDescendentFeatures(DiseaseAnnotation disease, TermSet feat, Integer N) {
+	int n_found=feat.countMembers(disease.getPositiveIds());
 	if (n_found < N)
 	    return false;
 	else
 	    return true;
     }
 
+    /**
+     * The candidates are the diseases that have (a descendant of) one of the features, of
+     * the first N-feature, of one of the optional features and of the neonatal feature with
+     * neonatal or congenital onset, as far as the definition has these constraints. Several
+     * features are combined by union, because {@link #hasFeatures} counts annotations over
+     * all features. If the definition has disease genes, the candidates are further
+     * restricted to the diseases with one of the genes. Definitions with only NOT features
+     * cannot be restricted.
+     */
+    @Override public int[] getCandidates(TermDiseaseIndex index, GeneDiseaseIndex genes) {
+	if (this.compiledHPO!=Definition.hpo)
+	    compileTermSets();
+	int[] candidates=null;
+	if (genes!=null && this.diseasegenes.size()>0)
+	    candidates = genes.getDiseases(this.diseaseGeneIds);
+	if (index==null)
+	    return candidates;
+	if (this.featurelist.size()>0)
+	    candidates = restrict(candidates,unionOfPositive(index,this.featureIndices));
+	if (this.featureNlist.size()>0 && this.N.get(0)>0)
+	    candidates = restrict(candidates,unionOfPositive(index,new int[]{this.featureNIndex}));
+	if (this.optionalFeaturelist.size()>0)
+	    candidates = restrict(candidates,unionOfPositive(index,this.optionalFeatureMask.getIndices()));
+	if (this.neonatalFeature!=null)
+	    candidates = restrict(candidates,this.neonatalFeatureIndex<0 ? new int[0] : index.getNeonatalAt(this.neonatalFeatureIndex));
+	return candidates;
+    }
+
+    private static int[] restrict(int[] candidates, int[] allowed) {
+	return candidates==null ? allowed : SortedInts.intersection(candidates,allowed);
+    }
+
+    private static int[] unionOfPositive(TermDiseaseIndex index, int[] termIndices) {
+	int[] u = new int[0];
+	for (int i : termIndices) {
+	    if (i>=0)
+		u = SortedInts.union(u,index.getPositiveAt(i));
+	}
+	return u;
+    }
+
+    @Override public void collectTerms(java.util.Collection<Integer> terms) {
+	terms.addAll(this.featurelist);
+	terms.addAll(this.notFeaturelist);
+	terms.addAll(this.optionalFeaturelist);
+	terms.addAll(this.featureNlist);
+	if (this.neonatalFeature!=null)
+	    terms.add(this.neonatalFeature);
+    }
+
     public void printDefinition(Writer out) throws IOException {
 	int n = this.diseasegenes.size();
 	out.write("Disease Gene: ");
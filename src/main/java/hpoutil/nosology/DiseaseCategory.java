@@ -10,6 +10,10 @@ import java.io.IOException;
 
 import hpoutil.ontology.*;
 import hpoutil.omim.DiseaseAnnotation;
+import hpoutil.omim.DiseaseSet;
+import hpoutil.omim.GeneDiseaseIndex;
+import hpoutil.omim.SortedInts;
+import hpoutil.omim.TermDiseaseIndex;
 
 /**
  * This class represents one of the 40 skeletal nosology categories
@@ -24,8 +28,16 @@ public class DiseaseCategory {
     private int categorynumber=0;
     /** reference to the HPO object */
     private static HPO hpo;
+    /** Inverted index used to restrict the candidates of {@link #findMembers} (can be null). */
+    private static TermDiseaseIndex diseaseIndex=null;
+    /** Inverted index from genes to diseases, used like {@link #diseaseIndex} (can be null). */
+    private static GeneDiseaseIndex geneIndex=null;
     /** Key: integer representation of the OMIM id; Value: name of the disease */
     private HashMap<Integer,String> goldstandard=null;
+    /** MIM ids of the gold standard diseases (the keys of {@link #goldstandard}). */
+    private DiseaseSet goldstandardSet=null;
+    /** MIM ids of the diseases in {@link #goodCandidate}. */
+    private DiseaseSet members=new DiseaseSet();
     /** Count of diseases we evaluated but found not to be members of this category */
     int notMemberCount=0;
     /** A list of 1 or more definitions for a disease to belong to this category */
@@ -35,7 +47,10 @@ public class DiseaseCategory {
     /** Keep a list of the false negative candidates here. */
     ArrayList<DiseaseAnnotation> notFound=new ArrayList<DiseaseAnnotation>();
     /** @param gs A list of all of the diseases belonging to this category according to the 2010 nosology. */
-    public void addGoldStandard(HashMap<Integer,String> gs) { this.goldstandard=gs; }
+    public void addGoldStandard(HashMap<Integer,String> gs) {
+	this.goldstandard=gs;
+	this.goldstandardSet=new DiseaseSet(gs.keySet());
+    }
 
     /**
      * The constructor takes the name of the disease and if applicable the disease genes.
@@ -47,6 +62,7 @@ public class DiseaseCategory {
 	this.categoryname=name;
 	this.categorynumber=number;
 	this.goldstandard=gs;
+	this.goldstandardSet=new DiseaseSet(gs.keySet());
 	this.classifierList=new ArrayList<Classifier>();
     }
     
@@ -60,6 +76,48 @@ public class DiseaseCategory {
 	DiseaseCategory.hpo=hpo;
     }
 
+    /**
+     * @param index An inverted index of the diseases that were built with the current HPO,
+     * or null to evaluate every disease.
+     */
+    static public void setDiseaseIndex(TermDiseaseIndex index) {
+	DiseaseCategory.diseaseIndex=index;
+    }
+
+    /**
+     * @param index An inverted index from genes to the diseases of the disease map, or null
+     * to test the genes of every disease.
+     */
+    static public void setGeneIndex(GeneDiseaseIndex index) {
+	DiseaseCategory.geneIndex=index;
+    }
+
+    /**
+     * @return sorted MIM ids of the diseases that can satisfy at least one of the
+     * classifiers, or null if all diseases have to be evaluated.
+     */
+    private int[] getCandidates() {
+	TermDiseaseIndex terms = DiseaseCategory.diseaseIndex;
+	if (terms!=null && terms.getHPO()!=DiseaseCategory.hpo)
+	    terms=null;
+	if (terms==null && DiseaseCategory.geneIndex==null)
+	    return null;
+	int[] candidates = new int[0];
+	for (Classifier c : this.classifierList) {
+	    int[] cc = c.getCandidates(terms,DiseaseCategory.geneIndex);
+	    if (cc==null)
+		return null;
+	    candidates = SortedInts.union(candidates,cc);
+	}
+	return candidates;
+    }
+
+    /** @return MIM ids of the diseases that were assigned to this category by {@link #findMembers}. */
+    public DiseaseSet getMembers() { return this.members; }
+
+    /** @return MIM ids of the gold standard diseases of this category. */
+    public DiseaseSet getGoldStandard() { return this.goldstandardSet; }
+
     public ArrayList<Integer> getMemberList() {
 	ArrayList<Integer> l = new ArrayList<Integer>();
 	for (DiseaseAnnotation da:this.goodCandidate) {
@@ -76,7 +134,7 @@ public class DiseaseCategory {
 
     private String getCategory(Integer disease) {
 	for (DiseaseCategory dc : DiseaseCategory.categorylist) {
-	    if (dc.goldstandard.containsKey(disease)) {
+	    if (dc.goldstandardSet.contains(disease)) {
 		return  String.format("%d->%s", dc.categorynumber,dc.categoryname);
    	    }
 	}
@@ -86,10 +144,6 @@ public class DiseaseCategory {
     public void printOutput(Writer out) throws IOException {
 	ArrayList<String> newprediction = new ArrayList<String>();
 	int n_gc_identified=0;
-	HashMap<Integer,Boolean> foundGS=new HashMap<Integer,Boolean>();
-	for (Integer id : this.goldstandard.keySet()) {
-	    foundGS.put(id,false);
-	}
 	out.write("#### ");
 	if (categorynumber != 0)
 	    out.write(this.categorynumber + ".");
@@ -104,10 +158,9 @@ public class DiseaseCategory {
 	out.write("Predictions:\n");
 	for (DiseaseAnnotation da : goodCandidate) {
 	    Integer id = da.getDiseaseId();
-	    if (goldstandard.containsKey(id)) {
+	    if (goldstandardSet.contains(id)) {
 		n_gc_identified++;
 		out.write(n_gc_identified + ") " + da.toString() + "[+]\n");
-		foundGS.put(id,true);
 	    } else {
 		String cat=getCategory(id);
 		String dis=String.format("%s %s",da.toString(),cat);
@@ -118,8 +171,8 @@ public class DiseaseCategory {
 	out.write(String.format("I got %d/%d (%.1f%%) of the gold standard diseases.\n",n_gc_identified,tot,((double)100*n_gc_identified/tot)));
 	if (n_gc_identified < tot) {
 	    int i=0;
-	    for (Integer id : foundGS.keySet()) {
-		if (foundGS.get(id))
+	    for (Integer id : goldstandard.keySet()) {
+		if (this.members.contains(id))
 		    continue;
 		else {
 		    String mimname = goldstandard.get(id);
@@ -150,6 +203,15 @@ public class DiseaseCategory {
     }
 
 
+    /** @return all HPO terms (Integer representation) used by the definitions of this category. */
+    public java.util.HashSet<Integer> getReferencedTerms() {
+	java.util.HashSet<Integer> terms = new java.util.HashSet<Integer>();
+	for (Classifier c : this.classifierList) {
+	    c.collectTerms(terms);
+	}
+	return terms;
+    }
+
     /** @return Name of the category.*/
     public String getName() { return this.categoryname; }
 
@@ -157,23 +219,94 @@ public class DiseaseCategory {
      * Try to identify all diseases that can be assigned to this category.
      * As a side effect, add all found diseases to {@link #goodCandidate}, and all
      * all diseases that are not found but are in the gold standard to 
-     * {@link #notFound}.
+     * {@link #notFound}. If a disease index has been set, only the diseases that
+     * the index returns as candidates are evaluated. Diseases that are not valid
+     * (deferred diseases whose annotation file could not be parsed) are skipped, as the
+     * parser skips them when the files are parsed up front.
      * @param diseasemap HashMap with all of the OMIM diseases and their annotations.
      */
     public void findMembers(HashMap<Integer,DiseaseAnnotation> diseasemap) {
+	int[] candidates = getCandidates();
+	if (candidates!=null)
+	    log.trace(String.format("%s: %d of %d diseases are candidates",this.categoryname,candidates.length,diseasemap.size()));
 	for (Integer id:diseasemap.keySet()) {
 	    DiseaseAnnotation d = diseasemap.get(id);
-	    boolean ok = evaluateCandidateDisease(d);
+	    boolean ok = (candidates==null || java.util.Arrays.binarySearch(candidates,id)>=0)
+		&& evaluateCandidateDisease(d) && d.isValid();
 	    if (ok) {
 		goodCandidate.add(d);
+		members.add(id);
 	    } else {
-		if (this.goldstandard.containsKey(id)) {
+		if (this.goldstandardSet.contains(id) && d.isValid()) {
 		    notFound.add(d);
 		}
 	    }
 	}
     }
 
+    /**
+     * Re-evaluate a single disease after its annotations changed, e.g., in watch mode.
+     * The disease is removed from the results of this category and, unless it was
+     * deleted, evaluated again. The new result is appended; after updating a batch of
+     * diseases, call {@link #sortResults} once to restore the order of {@link #findMembers}.
+     * @param id MIM id of the disease
+     * @param disease the new annotations of the disease, or null if it was deleted
+     * @return true if the disease joined or left this category
+     */
+    public boolean updateMember(Integer id, DiseaseAnnotation disease) {
+	boolean wasMember = this.members.remove(id);
+	removeDisease(this.goodCandidate,id);
+	removeDisease(this.notFound,id);
+	boolean isMember=false;
+	if (disease!=null) {
+	    isMember = evaluateCandidateDisease(disease);
+	    addResult(disease,isMember);
+	}
+	return wasMember!=isMember;
+    }
+
+    /**
+     * Record the result of {@link #evaluateCandidateDisease} for a disease: members are
+     * added to {@link #goodCandidate}, gold standard diseases that are not members to
+     * {@link #notFound}, and other diseases are not kept.
+     * @param disease the disease, or a copy of it without annotations (only the id, name
+     * and genes are needed for the output)
+     */
+    public void addResult(DiseaseAnnotation disease, boolean isMember) {
+	Integer id = disease.getDiseaseId();
+	if (isMember) {
+	    this.goodCandidate.add(disease);
+	    this.members.add(id);
+	} else if (this.goldstandardSet.contains(id)) {
+	    this.notFound.add(disease);
+	}
+    }
+
+    /** @return true if the disease is one of the gold standard diseases of this category. */
+    public boolean isGoldStandard(Integer id) { return this.goldstandardSet.contains(id); }
+
+    /**
+     * Order the results by the position of the diseases in a disease map, i.e., as
+     * {@link #findMembers} would have added them.
+     * @param position Key: MIM id, value: position of the disease in the disease map
+     */
+    public void sortResults(final java.util.Map<Integer,Integer> position) {
+	java.util.Comparator<DiseaseAnnotation> order = new java.util.Comparator<DiseaseAnnotation>() {
+	    public int compare(DiseaseAnnotation a, DiseaseAnnotation b) {
+		return position.get(a.getDiseaseId()).compareTo(position.get(b.getDiseaseId()));
+	    }
+	};
+	java.util.Collections.sort(this.goodCandidate,order);
+	java.util.Collections.sort(this.notFound,order);
+    }
+
+    private static void removeDisease(ArrayList<DiseaseAnnotation> lst, Integer id) {
+	for (java.util.Iterator<DiseaseAnnotation> it=lst.iterator();it.hasNext();) {
+	    if (it.next().getDiseaseId().equals(id))
+		it.remove();
+	}
+    }
+
     public boolean evaluateCandidateDisease(DiseaseAnnotation disease) {
 	boolean verbose=false;
 	//if (disease.MIMid().equals(187601))
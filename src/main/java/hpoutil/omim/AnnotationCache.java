@@ -0,0 +1,227 @@
+package hpoutil.omim;
+
+
+
+import org.apache.log4j.Logger;
+import java.io.*;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+/**
+ * Binary cache of parsed per-disease annotation files. For every file, the cache
+ * stores its size, modification time and CRC32 checksum together with the parsed
+ * disease (MIM id, name and packed annotations). A file whose size and modification
+ * time are unchanged is taken from the cache without being opened; if only the
+ * modification time changed, the checksum decides whether the file has to be
+ * parsed again. Disease genes are not cached, because they are added from the
+ * morbidmap file on every run. The cache also records the fingerprint of the
+ * {@link OnsetTable} that was used for the age classes, and is discarded if the
+ * table changes.
+ * <p>
+ * Layout (big endian): magic, version, onset table fingerprint, number of entries,
+ * and for each entry: path, size, modification time, checksum, MIM id, name,
+ * number of annotations, packed annotations. Strings are stored as length and UTF-8 bytes.
+ * @author Peter Robinson
+ * @version 0.1 (20 May 2015)
+ */
+public class AnnotationCache {
+
+    private static Logger log = Logger.getLogger(AnnotationCache.class.getName());
+
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    /** First eight bytes of every cache file. */
+    private static final byte[] MAGIC = { 'H','P','O','A','N','N','C',0 };
+    /** Incremented whenever the layout changes; older caches are then ignored. */
+    public static final int VERSION = 1;
+
+    /** One cached annotation file. */
+    private static final class Entry {
+	final long size;
+	final long mtime;
+	final long checksum;
+	final int diseaseId;
+	final String name;
+	final long[] annotations;
+
+	Entry(long size, long mtime, long checksum, int diseaseId, String name, long[] annotations) {
+	    this.size=size;
+	    this.mtime=mtime;
+	    this.checksum=checksum;
+	    this.diseaseId=diseaseId;
+	    this.name=name;
+	    this.annotations=annotations;
+	}
+    }
+
+    /** Key: absolute path of an annotation file, value: the entry read from the cache file. */
+    private final HashMap<String,Entry> cached = new HashMap<String,Entry>();
+    /** Key: absolute path, value: entry for the current state of the file (written by {@link #write}). */
+    private final TreeMap<String,Entry> current = new TreeMap<String,Entry>();
+    /** True if the cache file has to be rewritten. */
+    private boolean modified=false;
+    private int hits=0;
+    private int misses=0;
+
+    /**
+     * Read the cache file at path. If it does not exist, has a different version or
+     * was written with a different onset table, the cache starts empty.
+     */
+    public AnnotationCache(String path) {
+	try {
+	    if (new File(path).exists())
+		read(path,DiseaseAnnotation.getOnsetTable().getFingerprint());
+	} catch (IOException e) {
+	    log.warn("Could not read annotation cache " + path + ": " + e.getMessage());
+	    this.cached.clear();
+	}
+	if (this.cached.isEmpty())
+	    this.modified=true;
+    }
+
+    /**
+     * Return the disease for an annotation file, from the cache if the file is
+     * unchanged, otherwise by parsing the file (and updating the cache). This
+     * method may be called from several threads.
+     * @param path absolute path of an annotation file
+     */
+    public DiseaseAnnotation get(String path) throws IOException {
+	File file = new File(path);
+	long size = file.length();
+	long mtime = file.lastModified();
+	Entry e;
+	synchronized (this) {
+	    e = this.cached.get(path);
+	}
+	if (e!=null && e.size==size && e.mtime==mtime) {
+	    hit(path,e,false);
+	    return new DiseaseAnnotation(e.diseaseId,e.name,e.annotations.clone());
+	}
+	long crc = checksum(file);
+	if (e!=null && e.size==size && e.checksum==crc) { /* touched, but not changed */
+	    Entry touched = new Entry(size,mtime,crc,e.diseaseId,e.name,e.annotations);
+	    hit(path,touched,true);
+	    return new DiseaseAnnotation(e.diseaseId,e.name,e.annotations.clone());
+	}
+	DiseaseAnnotation da = new DiseaseAnnotation(path);
+	synchronized (this) {
+	    this.misses++;
+	    this.modified=true;
+	    if (da.isValid() && da.getDiseaseId()!=null) {
+		long[] packed = new long[da.getAnnotationCount()];
+		for (int i=0;i<packed.length;i++)
+		    packed[i] = da.getPackedAnnotation(i);
+		this.current.put(path,new Entry(size,mtime,crc,da.getDiseaseId(),da.getDiseaseName(),packed));
+	    }
+	}
+	return da;
+    }
+
+    private synchronized void hit(String path, Entry e, boolean changed) {
+	this.hits++;
+	this.current.put(path,e);
+	if (changed)
+	    this.modified=true;
+    }
+
+    /** @return number of files that were taken from the cache. */
+    public int getHits() { return this.hits; }
+
+    /** @return number of files that had to be parsed. */
+    public int getMisses() { return this.misses; }
+
+    /**
+     * Write the entries of all files that were requested with {@link #get} to path,
+     * if anything changed (files that were not requested are dropped from the cache).
+     */
+    public synchronized void write(String path) throws IOException {
+	if (!this.modified && this.current.size()==this.cached.size())
+	    return;
+	DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(path),1<<16));
+	try {
+	    out.write(MAGIC);
+	    out.writeInt(VERSION);
+	    out.writeLong(DiseaseAnnotation.getOnsetTable().getFingerprint());
+	    out.writeInt(this.current.size());
+	    for (Map.Entry<String,Entry> me : this.current.entrySet()) {
+		Entry e = me.getValue();
+		writeString(out,me.getKey());
+		out.writeLong(e.size);
+		out.writeLong(e.mtime);
+		out.writeLong(e.checksum);
+		out.writeInt(e.diseaseId);
+		writeString(out,e.name==null ? "" : e.name);
+		out.writeInt(e.annotations.length);
+		for (long a : e.annotations)
+		    out.writeLong(a);
+	    }
+	} finally {
+	    out.close();
+	}
+	log.info("Wrote annotation cache " + path + " with " + this.current.size() + " files");
+    }
+
+    private void read(String path, long fingerprint) throws IOException {
+	FileInputStream fstream = new FileInputStream(path);
+	try {
+	    FileChannel channel = fstream.getChannel();
+	    MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY,0,channel.size());
+	    byte[] magic = new byte[MAGIC.length];
+	    if (buf.remaining()<MAGIC.length+16)
+		return;
+	    buf.get(magic);
+	    if (!java.util.Arrays.equals(magic,MAGIC) || buf.getInt()!=VERSION)
+		return;
+	    if (buf.getLong()!=fingerprint) {
+		log.info("Onset table changed, discarding annotation cache " + path);
+		return;
+	    }
+	    int n = buf.getInt();
+	    for (int i=0;i<n;i++) {
+		String file = readString(buf);
+		long size = buf.getLong();
+		long mtime = buf.getLong();
+		long crc = buf.getLong();
+		int id = buf.getInt();
+		String name = readString(buf);
+		long[] annotations = new long[buf.getInt()];
+		buf.asLongBuffer().get(annotations);
+		buf.position(buf.position()+8*annotations.length);
+		this.cached.put(file,new Entry(size,mtime,crc,id,name,annotations));
+	    }
+	} finally {
+	    fstream.close();
+	}
+    }
+
+    private static void writeString(DataOutputStream out, String s) throws IOException {
+	byte[] b = s.getBytes(UTF8);
+	out.writeInt(b.length);
+	out.write(b);
+    }
+
+    private static String readString(MappedByteBuffer buf) {
+	byte[] b = new byte[buf.getInt()];
+	buf.get(b);
+	return new String(b,UTF8);
+    }
+
+    /** @return CRC32 checksum of the contents of the file */
+    private static long checksum(File file) throws IOException {
+	CRC32 crc = new CRC32();
+	byte[] buffer = new byte[1<<14];
+	FileInputStream in = new FileInputStream(file);
+	try {
+	    int n;
+	    while ((n=in.read(buffer))>0)
+		crc.update(buffer,0,n);
+	} finally {
+	    in.close();
+	}
+	return crc.getValue();
+    }
+}
@@ -1,6 +1,10 @@
 package hpoutil.omim;
 
-/** Represents one line of an annotation */
+/**
+ * Represents one line of an annotation. {@link DiseaseAnnotation} stores its
+ * annotations packed into one long each (see {@link #pack}); AnnotationItem
+ * objects are created while parsing and when iterating over the annotations.
+ */
 
 public class AnnotationItem {
     /** Representation of the HPO id, e.g., 1234 for HP:0001234 */
@@ -16,6 +20,10 @@ public class AnnotationItem {
     public static final int CHILDHOOD = 4;
     public static final int ADULT = 5;
     public static final int DEFAULT_AGE_OF_ONSET = 77;
+
+    /* Layout of the packed representation: HP id in bits 0-31, negation in bit 32, age class in bits 40-47. */
+    private static final long NEGATED_BIT = 1L<<32;
+    private static final int AGE_SHIFT = 40;
     
     
     public AnnotationItem(String hpoid, boolean negated) {
@@ -23,6 +31,48 @@ public class AnnotationItem {
 	this.is_negated = negated;
     }
 
+    /** @param packed an annotation in the representation of {@link #pack} */
+    public AnnotationItem(long packed) {
+	this.hpo_id = hpoId(packed);
+	this.is_negated = isNegated(packed);
+	this.age_class = ageClass(packed);
+    }
+
+    /** @return this annotation packed into a long, see {@link #pack(int,boolean,int)}. */
+    public long pack() {
+	return pack(this.hpo_id,this.is_negated,this.age_class);
+    }
+
+    /**
+     * @param hpoId Integer representation of the HP id
+     * @param negated true for a NOT annotation
+     * @param ageClass one of the age class constants, e.g., {@link #CONGENITAL}
+     * @return the annotation packed into a long
+     */
+    public static long pack(int hpoId, boolean negated, int ageClass) {
+	return (hpoId & 0xFFFFFFFFL) | (negated ? NEGATED_BIT : 0L) | ((long)(ageClass & 0xFF) << AGE_SHIFT);
+    }
+
+    /** @return the HP id of a packed annotation */
+    public static int hpoId(long packed) { return (int)packed; }
+
+    /** @return true if the packed annotation is a NOT annotation */
+    public static boolean isNegated(long packed) { return (packed & NEGATED_BIT)!=0; }
+
+    /** @return the age class of a packed annotation */
+    public static int ageClass(long packed) { return (int)(packed >>> AGE_SHIFT) & 0xFF; }
+
+    /** @return the packed annotation with a different HP id */
+    public static long withHpoId(long packed, int hpoId) {
+	return (packed & ~0xFFFFFFFFL) | (hpoId & 0xFFFFFFFFL);
+    }
+
+    /** @return one of the age class constants, e.g., {@link #CONGENITAL} */
+    public int getAgeClass() { return this.age_class; }
+
+    /** @param ageClass one of the age class constants, e.g., {@link #CONGENITAL} */
+    public void setAgeClass(int ageClass) { this.age_class=ageClass; }
+
     public boolean is_congenital() {
 	return age_class == CONGENITAL;
     }
@@ -42,6 +92,9 @@ public class AnnotationItem {
 
     public Integer getHPOid() { return this.hpo_id;}
 
+    /** @param id Integer representation of the (normalized) HPO id */
+    public void setHPOid(Integer id) { this.hpo_id=id; }
+
 
     public boolean is_negated() { return this.is_negated; }
     
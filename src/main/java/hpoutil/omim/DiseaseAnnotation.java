@@ -3,22 +3,34 @@ package hpoutil.omim;
 import java.io.BufferedReader;
 import java.io.FileReader;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
-import java.util.List;
 import java.util.Map;
 
+import org.apache.log4j.Logger;
+
+import hpoutil.ontology.HPO;
+import hpoutil.ontology.TermSet;
+
 /**
  * This class represents an individual disease and its
  * annotations to HPO terms and other metadata.
  * For now, we will extract the disease ID (e.g., OMIM:123456),
  * the disease name (e.g., Smith Syndrome), as well as the
  * individual HPO annotations and any negations.
+ * <p>
+ * A disease can also be created <i>deferred</i> (see {@link #deferred}), with only the
+ * MIM id taken from the file name; the annotation file is then parsed the first time
+ * the name or the annotations are needed, which for gene-constrained nosology rules
+ * is only the case for diseases with a matching gene.
  * @author peter.robinson@charite.de, Sebastian Bauer
  * @version 0.3 March 21, 2015
  */
 public class DiseaseAnnotation {
+    private static Logger log = Logger.getLogger(DiseaseAnnotation.class.getName());
     /** ID heading column number for annotation file (used only for the parse) */
     private static final String COL_ID = "ID";
     /** Name heading column number for annotation file (used only for the parse) */
@@ -44,21 +56,250 @@ public class DiseaseAnnotation {
     
     /** the accession number of the disease (e.g.,OMIM:123456) */
     private Integer diseaseId = null;
-    /** A list of all of the (positive and negative) annotations of this disease */
-    private ArrayList<AnnotationItem> annotationItems;
+    /**
+     * All of the (positive and negative) annotations of this disease, packed with
+     * {@link AnnotationItem#pack}; only the first {@link #nAnnotations} entries are used.
+     */
+    private long[] annotations=NO_ANNOTATIONS;
+    private int nAnnotations=0;
+
+    private static final long[] NO_ANNOTATIONS = new long[0];
+
+    /** Maps the age of onset labels of the annotation files to age classes. */
+    private static OnsetTable onsetTable=OnsetTable.DEFAULT;
 
     /** List of germline disease genes for this disease */
     private ArrayList<String> diseaseGenes=null;
+    /** Sorted ids (see {@link #getGeneRegistry}) of the genes in {@link #diseaseGenes}, without duplicates. */
+    private int[] diseaseGeneIds=NO_GENES;
+
+    private static final int[] NO_GENES = new int[0];
+
+    /** Ids of the gene symbols of all diseases (and of the nosology definitions). */
+    private static final GeneRegistry geneRegistry = new GeneRegistry();
 
     /** List of somatic (de novo) disease genes for this disease */
     private ArrayList<String> somaticDiseaseGenes=null;
 
+    /** All terms implied by the positive annotations (see {@link #getAnnotationProfile}). */
+    private TermSet profile=null;
+    /** The ontology {@link #profile} was computed with. */
+    private HPO profileHPO=null;
+    /** Sorted int[] views of the annotations (see {@link #getAnnotationViews}); null if out of date. */
+    private volatile AnnotationViews views=null;
+    /** Annotation file that has not been parsed yet (deferred diseases only). */
+    private volatile String pendingFile=null;
+    /** Ontology used to normalize the annotations of a deferred disease after parsing. */
+    private HPO pendingHPO=null;
+    /** Number of deferred diseases whose annotation files have been parsed. */
+    private static final java.util.concurrent.atomic.AtomicInteger deferredParses = new java.util.concurrent.atomic.AtomicInteger();
+
+    /**
+     * Immutable sorted arrays of the Integer representations of the annotated HP ids.
+     * Duplicates are kept, since a disease may be annotated to a term more than once.
+     * The onset arrays contain both positive and negated annotations.
+     */
+    private static final class AnnotationViews {
+	final int[] positive;
+	final int[] negated;
+	final int[] congenital;
+	final int[] neonatal;
+	final int[] neonatalOrCongenital;
+	final int[] infantile;
+	final int[] childhood;
+	final int[] adult;
+
+	AnnotationViews(long[] items, int n) {
+	    int[] count = new int[8];
+	    for (int i=0;i<n;i++) {
+		long item = items[i];
+		count[AnnotationItem.isNegated(item) ? 1 : 0]++;
+		int k = slot(AnnotationItem.ageClass(item));
+		if (k>=0)
+		    count[k]++;
+		if (k==2 || k==3)
+		    count[4]++;
+	    }
+	    int[][] a = new int[8][];
+	    for (int k=0;k<8;k++)
+		a[k] = new int[count[k]];
+	    int[] pos = new int[8];
+	    for (int i=0;i<n;i++) {
+		long item = items[i];
+		int id = AnnotationItem.hpoId(item);
+		int k = AnnotationItem.isNegated(item) ? 1 : 0;
+		a[k][pos[k]++]=id;
+		k = slot(AnnotationItem.ageClass(item));
+		if (k>=0)
+		    a[k][pos[k]++]=id;
+		if (k==2 || k==3)
+		    a[4][pos[4]++]=id;
+	    }
+	    for (int[] arr : a)
+		java.util.Arrays.sort(arr);
+	    this.positive=a[0];
+	    this.negated=a[1];
+	    this.congenital=a[2];
+	    this.neonatal=a[3];
+	    this.neonatalOrCongenital=a[4];
+	    this.infantile=a[5];
+	    this.childhood=a[6];
+	    this.adult=a[7];
+	}
+
+	/** @return index of the onset array for the age class, -1 for the default age class. */
+	private static int slot(int ageClass) {
+	    switch (ageClass) {
+	    case AnnotationItem.CONGENITAL: return 2;
+	    case AnnotationItem.NEONATAL: return 3;
+	    case AnnotationItem.INFANTILE: return 5;
+	    case AnnotationItem.CHILDHOOD: return 6;
+	    case AnnotationItem.ADULT: return 7;
+	    default: return -1;
+	    }
+	}
+    }
+
 
     public DiseaseAnnotation(String filename) {
-	annotationItems = new ArrayList<AnnotationItem>();
 	this.parseDiseaseFile(filename);
     }
 
+    /**
+     * Create a disease annotation from the contents of an annotation file, e.g., an
+     * entry of a zip archive.
+     * @param filename name of the file (for messages)
+     * @param in contents of the file (UTF-8; the stream is closed)
+     */
+    public DiseaseAnnotation(String filename, InputStream in) {
+	try {
+	    this.parseDiseaseFile(new BufferedReader(new InputStreamReader(in,"UTF-8")),filename);
+	} catch (IOException e) {
+	    e.printStackTrace();
+	}
+    }
+
+    /**
+     * Create a disease without annotations; the annotations are added with
+     * {@link #addAnnotationItem} (used for the bulk annotation file).
+     * @param diseaseId Integer representation of the MIM id, e.g., 123456
+     * @param diseaseName name of the disease
+     */
+    public DiseaseAnnotation(Integer diseaseId, String diseaseName) {
+	this.diseaseId=diseaseId;
+	this.diseaseName=diseaseName;
+    }
+
+    /**
+     * Create a disease from annotations that were parsed earlier, e.g., read from a cache.
+     * @param diseaseId Integer representation of the MIM id, e.g., 123456
+     * @param diseaseName name of the disease
+     * @param packed the annotations packed with {@link AnnotationItem#pack} (the array is not copied)
+     */
+    public DiseaseAnnotation(Integer diseaseId, String diseaseName, long[] packed) {
+	this.diseaseId=diseaseId;
+	this.diseaseName=diseaseName;
+	this.annotations=packed;
+	this.nAnnotations=packed.length;
+	this.views = new AnnotationViews(this.annotations,this.nAnnotations);
+    }
+
+    /**
+     * Create a disease whose annotation file is parsed only when its name or its
+     * annotations are first requested. Genes can be added before that.
+     * @param diseaseId Integer representation of the MIM id (taken from the file name)
+     * @param filename annotation file of the disease
+     * @param hpo ontology used to normalize the annotations after parsing (see
+     * {@link #normalizeAnnotations}); null to keep them as they are
+     */
+    public static DiseaseAnnotation deferred(Integer diseaseId, String filename, HPO hpo) {
+	DiseaseAnnotation da = new DiseaseAnnotation(diseaseId,null);
+	da.pendingHPO=hpo;
+	da.pendingFile=filename;
+	return da;
+    }
+
+    /** @return true if this is a deferred disease whose annotation file has not been parsed yet. */
+    public boolean isPending() { return this.pendingFile!=null; }
+
+    /** @return number of deferred diseases whose annotation files have been parsed so far. */
+    public static int getDeferredParseCount() { return deferredParses.get(); }
+
+    /**
+     * Parse the annotation file of a deferred disease. A file that cannot be parsed
+     * leaves the disease without annotations, i.e., it is not {@link #isValid valid} and
+     * is skipped as if it had been dropped by the parser; the MIM id of the file name is kept.
+     */
+    private void ensureParsed() {
+	if (this.pendingFile==null)
+	    return;
+	synchronized (this) {
+	    String filename = this.pendingFile;
+	    if (filename==null)
+		return;
+	    Integer id = this.diseaseId;
+	    try {
+		parseDiseaseFile(filename);
+	    } catch (RuntimeException e) {
+		log.error("Error extracting Disease Annotations for " + filename + ": " + e);
+		this.nAnnotations=0;
+	    }
+	    if (this.diseaseId==null || !this.diseaseId.equals(id))
+		log.warn(filename + " has id " + this.diseaseId + ", using " + id);
+	    this.diseaseId=id;
+	    if (this.pendingHPO!=null) {
+		int removed = normalize(this.pendingHPO);
+		if (removed>0)
+		    log.error(String.format("Removed %d annotation(s) to unknown HPO terms for disease %s",removed,this.diseaseName));
+	    }
+	    this.pendingHPO=null;
+	    if (this.nAnnotations==0)
+		log.error("Error extracting Disease Annotations for " + filename + ": no annotations");
+	    deferredParses.incrementAndGet();
+	    /* Last: threads that see pendingFile==null skip the lock and must see the normalized annotations. */
+	    this.pendingFile=null;
+	}
+    }
+
+    /**
+     * @return a copy of this disease with the id, the name and the genes but without
+     * annotations, e.g., to keep a classification result after the annotations are dropped.
+     */
+    public DiseaseAnnotation getSummary() {
+	DiseaseAnnotation s = new DiseaseAnnotation(this.diseaseId,getDiseaseName());
+	if (this.diseaseGenes!=null)
+	    s.diseaseGenes = new ArrayList<String>(this.diseaseGenes);
+	s.diseaseGeneIds = this.diseaseGeneIds;
+	if (this.somaticDiseaseGenes!=null)
+	    s.somaticDiseaseGenes = new ArrayList<String>(this.somaticDiseaseGenes);
+	return s;
+    }
+
+    /** Add one (positive or negative) annotation to this disease. */
+    public synchronized void addAnnotationItem(AnnotationItem item) {
+	ensureParsed();
+	addPacked(item.pack());
+	this.profile=null;
+	this.views=null;
+    }
+
+    private void addPacked(long item) {
+	if (this.nAnnotations==this.annotations.length)
+	    this.annotations = java.util.Arrays.copyOf(this.annotations,Math.max(8,2*this.nAnnotations));
+	this.annotations[this.nAnnotations++]=item;
+    }
+
+    /**
+     * Set the table used to map the age of onset labels of the annotation files
+     * to age classes, e.g., an {@link OnsetTable} that covers the onset subtree of the HPO.
+     */
+    public static void setOnsetTable(OnsetTable table) {
+	DiseaseAnnotation.onsetTable=table;
+    }
+
+    /** @return the table used to map age of onset labels and terms to age classes. */
+    public static OnsetTable getOnsetTable() { return DiseaseAnnotation.onsetTable; }
+
     /**
      * Return a list of items joined by a comma */
     private String join(ArrayList<String> al) {
@@ -77,6 +318,7 @@ public class DiseaseAnnotation {
 
 
     public String toString() {
+	ensureParsed();
 	String genes = join(diseaseGenes);
 	return String.format("MIM:%06d %s [%s]", this.diseaseId,this.diseaseName,genes);
     }
@@ -87,26 +329,46 @@ public class DiseaseAnnotation {
      * argument sym.
      */
     public boolean hasDiseaseGene(String sym) {
-	if (this.diseaseGenes==null)
-	    return false;
-	for (String gene:this.diseaseGenes)
-	    if (gene.equals(sym))
-		return true;
-	return false;
+	int id = geneRegistry.getId(sym);
+	return id>=0 && hasDiseaseGene(id);
+    }
 
+    /** @return true if the disease has the gene with the given id (see {@link #getGeneRegistry}). */
+    public boolean hasDiseaseGene(int geneId) {
+	return java.util.Arrays.binarySearch(this.diseaseGeneIds,geneId)>=0;
     }
 
+    /** @return true if the disease has at least one of the genes (sorted ids, see {@link #getGeneRegistry}). */
+    public boolean hasAnyDiseaseGene(int[] geneIds) {
+	return SortedInts.intersects(this.diseaseGeneIds,geneIds);
+    }
+
+    /** @return the sorted ids of the germline disease genes (see {@link #getGeneRegistry}); must not be modified. */
+    public int[] getGeneIds() { return this.diseaseGeneIds; }
+
+    /** @return the registry that assigns the ids of the disease genes. */
+    public static GeneRegistry getGeneRegistry() { return DiseaseAnnotation.geneRegistry; }
 
     public void addGeneList(ArrayList<String> lst) {
 	if (this.diseaseGenes==null) 
 	    this.diseaseGenes=new ArrayList<String>();
 	this.diseaseGenes.addAll(lst);
+	this.diseaseGeneIds = SortedInts.union(this.diseaseGeneIds,geneRegistry.intern(lst));
+    }
+
+    /** Add the genes of a morbid map entry, whose gene ids were assigned by the morbid map. */
+    public void addGenes(OMIMDisease disease) {
+	if (this.diseaseGenes==null) 
+	    this.diseaseGenes=new ArrayList<String>();
+	this.diseaseGenes.addAll(disease.getGenes());
+	this.diseaseGeneIds = SortedInts.union(this.diseaseGeneIds,disease.getGeneIds());
     }
 
     public void addDiseaseGene(String symbol) {
 	if (this.diseaseGenes==null) 
 	    this.diseaseGenes=new ArrayList<String>();
 	this.diseaseGenes.add(symbol);
+	this.diseaseGeneIds = SortedInts.union(this.diseaseGeneIds,new int[]{geneRegistry.intern(symbol)});
     }
 
     public void addSomaticDiseaseGene(String symbol){
@@ -157,128 +419,186 @@ public class DiseaseAnnotation {
 
 
     public ArrayList<Integer> getPositiveAnnotations() {
-	ArrayList<Integer> lst = new ArrayList<Integer>();
-	for (AnnotationItem item : this.annotationItems) {
-	    if (item.is_negated())
-		continue;
-	    lst.add(item.getHPOid());
-	}
-	return lst;
+	return toList(getPositiveIds());
     }
 
      public ArrayList<Integer> getNegativeAnnotations() {
-	ArrayList<Integer> lst = new ArrayList<Integer>();
-	for (AnnotationItem item : this.annotationItems) {
-	    if (item.is_negated())
-		lst.add(item.getHPOid());
-	}
-	return lst;
+	return toList(getNegatedIds());
     }
 
     /**
      * @return List of annotations that have neonatal onset
      */
     public ArrayList<Integer>  getNeonatalAnnotations() {
-	ArrayList<Integer> lst = new ArrayList<Integer>();
-	for (AnnotationItem item : this.annotationItems) {
-	    if (item.is_neonatal())
-		lst.add(item.getHPOid());
-	}
-	return lst;
+	return toList(getNeonatalIds());
     }
 
      /**
      * @return List of annotations that have neonatal onset
      */
     public ArrayList<Integer>  getCongenitalAnnotations() {
-	ArrayList<Integer> lst = new ArrayList<Integer>();
-	for (AnnotationItem item : this.annotationItems) {
-	    if (item.is_congenital())
-		lst.add(item.getHPOid());
-	}
+	return toList(getCongenitalIds());
+    }
+
+    private static ArrayList<Integer> toList(int[] ids) {
+	ArrayList<Integer> lst = new ArrayList<Integer>(ids.length);
+	for (int id : ids)
+	    lst.add(id);
 	return lst;
     }
 
     
+    /**
+     * Replace alt_id's and ids of obsolete terms in the annotations by the ids of the
+     * current terms, and remove annotations to ids that are not in the ontology at all.
+     * This is done once after parsing, so that the classification does not need to deal
+     * with unknown ids.
+     * @return number of annotations that were removed
+     */
+    public synchronized int normalizeAnnotations(HPO hpo) {
+	ensureParsed();
+	return normalize(hpo);
+    }
+
+    /** Normalize the annotations that are currently loaded (see {@link #normalizeAnnotations}). */
+    private int normalize(HPO hpo) {
+	int removed=0;
+	this.profile=null;
+	int k=0;
+	for (int i=0;i<this.nAnnotations;i++) {
+	    long item = this.annotations[i];
+	    int id = hpo.resolve(AnnotationItem.hpoId(item));
+	    if (id<0) {
+		removed++;
+	    } else {
+		this.annotations[k++] = AnnotationItem.withHpoId(item,id);
+	    }
+	}
+	this.nAnnotations=k;
+	this.views = new AnnotationViews(this.annotations,this.nAnnotations);
+	return removed;
+    }
+
+    /**
+     * @return the sorted int[] views of the annotations; they are computed once after
+     * parsing and after {@link #normalizeAnnotations}, and are recomputed only if annotations were added.
+     */
+    private AnnotationViews getAnnotationViews() {
+	ensureParsed();
+	AnnotationViews v = this.views;
+	if (v==null) {
+	    synchronized (this) {
+		if (this.views==null)
+		    this.views = new AnnotationViews(this.annotations,this.nAnnotations);
+		v = this.views;
+	    }
+	}
+	return v;
+    }
+
+    /** @return sorted Integer representations of the HP ids of the positive annotations (the array must not be modified). */
+    public int[] getPositiveIds() { return getAnnotationViews().positive; }
+
+    /** @return sorted Integer representations of the HP ids of the NOT annotations (the array must not be modified). */
+    public int[] getNegatedIds() { return getAnnotationViews().negated; }
+
+    /** @return sorted HP ids of the annotations with congenital onset (the array must not be modified). */
+    public int[] getCongenitalIds() { return getAnnotationViews().congenital; }
+
+    /** @return sorted HP ids of the annotations with neonatal onset (the array must not be modified). */
+    public int[] getNeonatalIds() { return getAnnotationViews().neonatal; }
+
+    /** @return sorted HP ids of the annotations with neonatal or congenital onset (the array must not be modified). */
+    public int[] getNeonatalOrCongenitalIds() { return getAnnotationViews().neonatalOrCongenital; }
+
+    /** @return sorted HP ids of the annotations with infantile onset (the array must not be modified). */
+    public int[] getInfantileIds() { return getAnnotationViews().infantile; }
+
+    /** @return sorted HP ids of the annotations with childhood onset (the array must not be modified). */
+    public int[] getChildhoodIds() { return getAnnotationViews().childhood; }
+
+    /** @return sorted HP ids of the annotations with adult onset (the array must not be modified). */
+    public int[] getAdultIds() { return getAnnotationViews().adult; }
+
+    /**
+     * @return the positive annotations of this disease together with all of their ancestors.
+     * The profile is computed once per ontology and cached.
+     */
+    public synchronized TermSet getAnnotationProfile(HPO hpo) {
+	if (this.profile==null || this.profileHPO!=hpo) {
+	    this.profile = hpo.getAncestorProfile(getPositiveIds());
+	    this.profileHPO = hpo;
+	}
+	return this.profile;
+    }
+
     /**
      * Create a disease annotation from the given file.
      * @param filename One of the "small files" from the HPO project, i.e., an annotation file for one disease
      */
     private void parseDiseaseFile(String filename) {
 	try {
-	    BufferedReader br = new BufferedReader(new FileReader(filename));
-	    String header = br.readLine();
-	    Map<String, Integer> headerMap = parseHeader(header);
-	    
-	    int lineNo = 1;
-	    while (br.ready()) {
-		String line = br.readLine();
-		boolean negative = false; // is this line a NOT line (ie disease does not have this feature).
-	    	
-		String[] segments = line.split("\\t");
-		if (segments.length == 0 || line.equals("")) {
-		    /* There are some empty lines in the input file, apparently a minor Phenote bug,
-		       but we can just skip them. */
-		    continue; 
-		}    		    
-		if (segments.length <= headerMap.get(NO_COLUMNS)) {
-		    System.err.println("[WARN] Ignoring line " + lineNo + " of " + filename + " due to missing columns");
-		    System.err.println("[WARN] Number of fields was " + segments.length + ", but I was expecting at least " + headerMap.get(NO_COLUMNS) + " fields");
-		    System.err.println("[WARN] The line was: " + line);
-		    continue;
-		}
-	  	
-		if (lineNo == 1) {
-		    diseaseName = segments[headerMap.get(COL_NAME)];
-		    String id = segments[headerMap.get(COL_ID)];
-		    this.diseaseId = parseMimId(id);
-		    lineNo++;
-		}
-		
-		String negation = segments[headerMap.get(COL_NEGATION)];
-		if (negation.equalsIgnoreCase("NOT")) {
-		    negative = true;
-		}
-		String hpo = segments[headerMap.get(COL_HPO)];
-		AnnotationItem item=null;
-	    	try {
-		    item = new AnnotationItem(hpo, negative);
-		} catch(IllegalArgumentException e) {
-		    System.err.println("[DiseaseAnnotation.java ERROR]:" + e.getMessage());
-		    System.err.println("Affected line is "+ line);
-		    //System.exit(1);
-		    continue;
-		}
-
-
-		String age = segments[headerMap.get(COL_AO)];
-		if (!age.isEmpty() ) {
-		    if (age.equalsIgnoreCase("Congenital onset")) {
-			item.set_congenital_age();
-		    }
-		    if (age.equalsIgnoreCase("Neonatal onset")) {
-			item.set_neonatal_age();
-		    }
-		    if (age.equalsIgnoreCase("Infantile onset") || age.equalsIgnoreCase("Onset in infancy")) {
-			item.set_infantile_age();
-		    }
-		    if (age.equalsIgnoreCase("Childhood onset") || age.equalsIgnoreCase("Juvenile onset")) {
-			item.set_childhood_age();
-		    }
-		    if (age.equalsIgnoreCase("Onset in adolescence") || age.equalsIgnoreCase("Adult onset") ||
-			age.equalsIgnoreCase("Young adult onset") || age.equalsIgnoreCase("Onset in early adulthood") || 
-			age.equalsIgnoreCase("Late onset")) {
-			item.set_adult_age();
-		    }
-		}
+	    parseDiseaseFile(new BufferedReader(new FileReader(filename)),filename);
+	} catch (IOException e) {
+	    e.printStackTrace();
+	}
+    }
+
+    private void parseDiseaseFile(BufferedReader br, String filename) throws IOException {
+	String header = br.readLine();
+	Map<String, Integer> headerMap = parseHeader(header);
+	
+	int lineNo = 1;
+	String line;
+	while ((line=br.readLine())!=null) {
+	    boolean negative = false; // is this line a NOT line (ie disease does not have this feature).
 		
-		annotationItems.add(item);
+	    String[] segments = line.split("\\t");
+	    if (segments.length == 0 || line.equals("")) {
+	        /* There are some empty lines in the input file, apparently a minor Phenote bug,
+	           but we can just skip them. */
+	        continue; 
+	    }    		    
+	    if (segments.length <= headerMap.get(NO_COLUMNS)) {
+	        System.err.println("[WARN] Ignoring line " + lineNo + " of " + filename + " due to missing columns");
+	        System.err.println("[WARN] Number of fields was " + segments.length + ", but I was expecting at least " + headerMap.get(NO_COLUMNS) + " fields");
+	        System.err.println("[WARN] The line was: " + line);
+	        continue;
+	    }
+	  	
+	    if (lineNo == 1) {
+	        diseaseName = segments[headerMap.get(COL_NAME)];
+	        String id = segments[headerMap.get(COL_ID)];
+	        this.diseaseId = parseMimId(id);
+	        lineNo++;
 	    }
 	    
-	    br.close();
-	} catch (IOException e) {
-	    e.printStackTrace();
+	    String negation = segments[headerMap.get(COL_NEGATION)];
+	    if (negation.equalsIgnoreCase("NOT")) {
+	        negative = true;
+	    }
+	    String hpo = segments[headerMap.get(COL_HPO)];
+	    AnnotationItem item=null;
+		try {
+	        item = new AnnotationItem(hpo, negative);
+	    } catch(IllegalArgumentException e) {
+	        System.err.println("[DiseaseAnnotation.java ERROR]:" + e.getMessage());
+	        System.err.println("Affected line is "+ line);
+	        //System.exit(1);
+	        continue;
+	    }
+
+
+	    String age = segments[headerMap.get(COL_AO)];
+	    item.setAgeClass(onsetTable.getAgeClass(age));
+	    
+	    addPacked(item.pack());
 	}
+	
+	br.close();
+	if (this.nAnnotations<this.annotations.length)
+	    this.annotations = java.util.Arrays.copyOf(this.annotations,this.nAnnotations);
+	this.views = new AnnotationViews(this.annotations,this.nAnnotations);
     }
 
     /**
@@ -298,11 +618,40 @@ public class DiseaseAnnotation {
 
 
       
+    /** @return iterator over the annotations; the AnnotationItem objects are created from the packed representation. */
     public Iterator<AnnotationItem>  get_item_iterator(){
-    	return this.annotationItems.iterator();
+	ensureParsed();
+	final long[] items = this.annotations;
+	final int n = this.nAnnotations;
+	return new Iterator<AnnotationItem>() {
+	    private int i=0;
+	    public boolean hasNext() { return i<n; }
+	    public AnnotationItem next() {
+		if (i>=n)
+		    throw new java.util.NoSuchElementException();
+		return new AnnotationItem(items[i++]);
+	    }
+	    public void remove() { throw new UnsupportedOperationException(); }
+	};
+    }
+
+    /** @return number of (positive and negative) annotations of this disease. */
+    public int getAnnotationCount() {
+	ensureParsed();
+	return this.nAnnotations;
+    }
+
+    /**
+     * @param i index of an annotation (0 .. {@link #getAnnotationCount}-1)
+     * @return the annotation packed with {@link AnnotationItem#pack}
+     */
+    public long getPackedAnnotation(int i) {
+	ensureParsed();
+	return this.annotations[i];
     }
     
     public String getDiseaseName() {
+	ensureParsed();
 	return diseaseName;
     }
     
@@ -317,7 +666,8 @@ public class DiseaseAnnotation {
      * @return true if there is at least one annotation for this disease, otherwise false (probably something went wrong in parsing)
      */
     public boolean isValid() {
-    	return (annotationItems.size() > 0);
+	ensureParsed();
+    	return (this.nAnnotations > 0);
     }
     
     public static void main(String[] args) {
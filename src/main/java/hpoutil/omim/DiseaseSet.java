@@ -0,0 +1,563 @@
+package hpoutil.omim;
+
+
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * A compressed set of MIM ids. The ids are split into their upper and lower 16 bits;
+ * the lower halves of all ids with the same upper half are kept in one container,
+ * which is a sorted array while it has at most 4096 entries and a bitmap of 2^16 bits
+ * otherwise (the layout of Roaring bitmaps). MIM ids are six-digit numbers, so a set
+ * of diseases has at most a few dozen containers, and intersections, unions and
+ * differences are merges of short sorted arrays or loops over 1024 words.
+ * The set is not thread-safe; ids are treated as unsigned numbers.
+ * @author Peter Robinson
+ * @version 0.1 (22 May 2015)
+ */
+public final class DiseaseSet implements Iterable<Integer> {
+
+    /** Maximum number of entries of an array container. */
+    private static final int ARRAY_MAX = 4096;
+    /** Number of 64-bit words of a bitmap container. */
+    private static final int BITMAP_WORDS = 1024;
+
+    /** Sorted upper 16 bits of the ids of the containers. */
+    private char[] keys;
+    /** containers[i] holds the lower 16 bits of the ids with upper bits keys[i]. */
+    private Container[] containers;
+    /** Number of containers in use. */
+    private int nContainers=0;
+
+    public DiseaseSet() {
+	this.keys = new char[4];
+	this.containers = new Container[4];
+    }
+
+    /** @param ids MIM ids, in any order (duplicates are ignored) */
+    public DiseaseSet(int[] ids) {
+	this();
+	for (int id : ids)
+	    add(id);
+    }
+
+    /** @param ids MIM ids, in any order (duplicates are ignored) */
+    public DiseaseSet(Iterable<Integer> ids) {
+	this();
+	for (Integer id : ids)
+	    add(id);
+    }
+
+    /**
+     * Add a disease to the set.
+     * @return true if the set did not already contain the disease
+     */
+    public boolean add(int id) {
+	char hi = (char)(id>>>16);
+	int i = findKey(hi);
+	if (i<0) {
+	    i = -i-1;
+	    insertContainer(i,hi,new ArrayContainer());
+	}
+	Container c = this.containers[i];
+	int before = c.cardinality();
+	this.containers[i] = c.add((char)id);
+	return this.containers[i].cardinality()>before;
+    }
+
+    /**
+     * Remove a disease from the set.
+     * @return true if the set contained the disease
+     */
+    public boolean remove(int id) {
+	int i = findKey((char)(id>>>16));
+	if (i<0)
+	    return false;
+	Container c = this.containers[i];
+	int before = c.cardinality();
+	c = c.remove((char)id);
+	if (c.cardinality()==before)
+	    return false;
+	if (c.cardinality()==0) {
+	    System.arraycopy(this.keys,i+1,this.keys,i,this.nContainers-i-1);
+	    System.arraycopy(this.containers,i+1,this.containers,i,this.nContainers-i-1);
+	    this.nContainers--;
+	    this.containers[this.nContainers]=null;
+	} else {
+	    this.containers[i]=c;
+	}
+	return true;
+    }
+
+    /** Add all diseases of other to this set. */
+    public void addAll(DiseaseSet other) {
+	DiseaseSet u = or(this,other);
+	this.keys=u.keys;
+	this.containers=u.containers;
+	this.nContainers=u.nContainers;
+    }
+
+    /** @return true if the set contains the disease */
+    public boolean contains(int id) {
+	int i = findKey((char)(id>>>16));
+	return i>=0 && this.containers[i].contains((char)id);
+    }
+
+    /** @return number of diseases in the set. */
+    public int cardinality() {
+	int n=0;
+	for (int i=0;i<this.nContainers;i++)
+	    n += this.containers[i].cardinality();
+	return n;
+    }
+
+    public boolean isEmpty() { return this.nContainers==0; }
+
+    /** @return the MIM ids of the set in ascending order. */
+    public int[] toArray() {
+	int[] a = new int[cardinality()];
+	int k=0;
+	for (int i=0;i<this.nContainers;i++)
+	    k = this.containers[i].fill(a,k,this.keys[i]<<16);
+	return a;
+    }
+
+    /** @return the MIM ids of the set in ascending order. */
+    @Override public Iterator<Integer> iterator() {
+	final int[] ids = toArray();
+	return new Iterator<Integer>() {
+	    private int pos=0;
+	    public boolean hasNext() { return pos<ids.length; }
+	    public Integer next() {
+		if (pos>=ids.length)
+		    throw new NoSuchElementException();
+		return ids[pos++];
+	    }
+	    public void remove() { throw new UnsupportedOperationException(); }
+	};
+    }
+
+    /** @return a new set with the diseases that are in both a and b. */
+    public static DiseaseSet and(DiseaseSet a, DiseaseSet b) {
+	DiseaseSet r = new DiseaseSet();
+	int i=0, j=0;
+	while (i<a.nContainers && j<b.nContainers) {
+	    if (a.keys[i]<b.keys[j])
+		i++;
+	    else if (a.keys[i]>b.keys[j])
+		j++;
+	    else {
+		Container c = and(a.containers[i],b.containers[j]);
+		if (c.cardinality()>0)
+		    r.appendContainer(a.keys[i],c);
+		i++;
+		j++;
+	    }
+	}
+	return r;
+    }
+
+    /** @return a new set with the diseases that are in a or b (or both). */
+    public static DiseaseSet or(DiseaseSet a, DiseaseSet b) {
+	DiseaseSet r = new DiseaseSet();
+	int i=0, j=0;
+	while (i<a.nContainers || j<b.nContainers) {
+	    if (j>=b.nContainers || (i<a.nContainers && a.keys[i]<b.keys[j])) {
+		r.appendContainer(a.keys[i],a.containers[i].copy());
+		i++;
+	    } else if (i>=a.nContainers || a.keys[i]>b.keys[j]) {
+		r.appendContainer(b.keys[j],b.containers[j].copy());
+		j++;
+	    } else {
+		r.appendContainer(a.keys[i],or(a.containers[i],b.containers[j]));
+		i++;
+		j++;
+	    }
+	}
+	return r;
+    }
+
+    /** @return a new set with the diseases that are in a but not in b. */
+    public static DiseaseSet andNot(DiseaseSet a, DiseaseSet b) {
+	DiseaseSet r = new DiseaseSet();
+	int i=0, j=0;
+	while (i<a.nContainers) {
+	    if (j>=b.nContainers || a.keys[i]<b.keys[j]) {
+		r.appendContainer(a.keys[i],a.containers[i].copy());
+		i++;
+	    } else if (a.keys[i]>b.keys[j]) {
+		j++;
+	    } else {
+		Container c = andNot(a.containers[i],b.containers[j]);
+		if (c.cardinality()>0)
+		    r.appendContainer(a.keys[i],c);
+		i++;
+		j++;
+	    }
+	}
+	return r;
+    }
+
+    /** @return the number of diseases that are in both a and b (without creating the intersection). */
+    public static int andCardinality(DiseaseSet a, DiseaseSet b) {
+	int n=0;
+	int i=0, j=0;
+	while (i<a.nContainers && j<b.nContainers) {
+	    if (a.keys[i]<b.keys[j])
+		i++;
+	    else if (a.keys[i]>b.keys[j])
+		j++;
+	    else {
+		n += andCardinality(a.containers[i],b.containers[j]);
+		i++;
+		j++;
+	    }
+	}
+	return n;
+    }
+
+    /** @return Estimate of the heap memory used by the set in bytes. */
+    public long getMemoryUsage() {
+	long bytes = 32L + 16L + 2L*this.keys.length + 16L + 8L*this.containers.length;
+	for (int i=0;i<this.nContainers;i++)
+	    bytes += this.containers[i].getMemoryUsage();
+	return bytes;
+    }
+
+    @Override public boolean equals(Object o) {
+	if (!(o instanceof DiseaseSet))
+	    return false;
+	return java.util.Arrays.equals(toArray(),((DiseaseSet)o).toArray());
+    }
+
+    @Override public int hashCode() {
+	return java.util.Arrays.hashCode(toArray());
+    }
+
+    public String toString() {
+	return String.format("DiseaseSet: %d diseases in %d containers",cardinality(),this.nContainers);
+    }
+
+    private int findKey(char hi) {
+	int lo=0, up=this.nContainers-1;
+	while (lo<=up) {
+	    int mid = (lo+up)>>>1;
+	    if (this.keys[mid]<hi)
+		lo=mid+1;
+	    else if (this.keys[mid]>hi)
+		up=mid-1;
+	    else
+		return mid;
+	}
+	return -(lo+1);
+    }
+
+    private void insertContainer(int i, char hi, Container c) {
+	if (this.nContainers==this.keys.length) {
+	    this.keys = java.util.Arrays.copyOf(this.keys,2*this.nContainers);
+	    this.containers = java.util.Arrays.copyOf(this.containers,2*this.nContainers);
+	}
+	System.arraycopy(this.keys,i,this.keys,i+1,this.nContainers-i);
+	System.arraycopy(this.containers,i,this.containers,i+1,this.nContainers-i);
+	this.keys[i]=hi;
+	this.containers[i]=c;
+	this.nContainers++;
+    }
+
+    private void appendContainer(char hi, Container c) {
+	insertContainer(this.nContainers,hi,c);
+    }
+
+    /* ---------------------------------------------------------------- */
+    /* Containers                                                       */
+    /* ---------------------------------------------------------------- */
+
+    private static abstract class Container {
+	/** @return this container or a new one (if the representation changed) with x added. */
+	abstract Container add(char x);
+	/** @return this container or a new one (if the representation changed) without x. */
+	abstract Container remove(char x);
+	abstract boolean contains(char x);
+	abstract int cardinality();
+	abstract Container copy();
+	/** Write the values (plus base) to a, starting at position k; return the next position. */
+	abstract int fill(int[] a, int k, int base);
+	abstract long getMemoryUsage();
+    }
+
+    /** Sorted array of at most {@link #ARRAY_MAX} values. */
+    private static final class ArrayContainer extends Container {
+	char[] values;
+	int n;
+
+	ArrayContainer() { this(new char[4],0); }
+
+	ArrayContainer(char[] values, int n) {
+	    this.values=values;
+	    this.n=n;
+	}
+
+	Container add(char x) {
+	    int i = java.util.Arrays.binarySearch(this.values,0,this.n,x);
+	    if (i>=0)
+		return this;
+	    if (this.n==ARRAY_MAX)
+		return toBitmap().add(x);
+	    i = -i-1;
+	    if (this.n==this.values.length)
+		this.values = java.util.Arrays.copyOf(this.values,Math.min(ARRAY_MAX,2*this.n));
+	    System.arraycopy(this.values,i,this.values,i+1,this.n-i);
+	    this.values[i]=x;
+	    this.n++;
+	    return this;
+	}
+
+	Container remove(char x) {
+	    int i = java.util.Arrays.binarySearch(this.values,0,this.n,x);
+	    if (i>=0) {
+		System.arraycopy(this.values,i+1,this.values,i,this.n-i-1);
+		this.n--;
+	    }
+	    return this;
+	}
+
+	boolean contains(char x) {
+	    return java.util.Arrays.binarySearch(this.values,0,this.n,x)>=0;
+	}
+
+	int cardinality() { return this.n; }
+
+	Container copy() { return new ArrayContainer(java.util.Arrays.copyOf(this.values,Math.max(1,this.n)),this.n); }
+
+	int fill(int[] a, int k, int base) {
+	    for (int i=0;i<this.n;i++)
+		a[k++] = base | this.values[i];
+	    return k;
+	}
+
+	BitmapContainer toBitmap() {
+	    BitmapContainer b = new BitmapContainer();
+	    for (int i=0;i<this.n;i++)
+		b.bits[this.values[i]>>>6] |= 1L << this.values[i];
+	    b.n=this.n;
+	    return b;
+	}
+
+	long getMemoryUsage() { return 24L + 16L + 2L*this.values.length; }
+    }
+
+    /** Bitmap of all 2^16 values. */
+    private static final class BitmapContainer extends Container {
+	final long[] bits;
+	int n;
+
+	BitmapContainer() { this(new long[BITMAP_WORDS],0); }
+
+	BitmapContainer(long[] bits, int n) {
+	    this.bits=bits;
+	    this.n=n;
+	}
+
+	Container add(char x) {
+	    long mask = 1L << x;
+	    if ((this.bits[x>>>6] & mask)==0) {
+		this.bits[x>>>6] |= mask;
+		this.n++;
+	    }
+	    return this;
+	}
+
+	Container remove(char x) {
+	    long mask = 1L << x;
+	    if ((this.bits[x>>>6] & mask)!=0) {
+		this.bits[x>>>6] &= ~mask;
+		this.n--;
+	    }
+	    return shrink();
+	}
+
+	boolean contains(char x) { return (this.bits[x>>>6] & (1L << x))!=0; }
+
+	int cardinality() { return this.n; }
+
+	Container copy() { return new BitmapContainer(this.bits.clone(),this.n); }
+
+	int fill(int[] a, int k, int base) {
+	    for (int w=0;w<BITMAP_WORDS;w++) {
+		long word = this.bits[w];
+		while (word!=0) {
+		    a[k++] = base | (w<<6) + Long.numberOfTrailingZeros(word);
+		    word &= word-1;
+		}
+	    }
+	    return k;
+	}
+
+	/** @return an array container if the bitmap has few enough values, otherwise this. */
+	Container shrink() {
+	    if (this.n>ARRAY_MAX)
+		return this;
+	    char[] values = new char[Math.max(1,this.n)];
+	    int k=0;
+	    for (int w=0;w<BITMAP_WORDS;w++) {
+		long word = this.bits[w];
+		while (word!=0) {
+		    values[k++] = (char)((w<<6) + Long.numberOfTrailingZeros(word));
+		    word &= word-1;
+		}
+	    }
+	    return new ArrayContainer(values,k);
+	}
+
+	long getMemoryUsage() { return 24L + 16L + 8L*BITMAP_WORDS; }
+    }
+
+    private static Container and(Container a, Container b) {
+	if (a instanceof ArrayContainer && b instanceof ArrayContainer) {
+	    ArrayContainer x = (ArrayContainer)a, y = (ArrayContainer)b;
+	    char[] c = new char[Math.max(1,Math.min(x.n,y.n))];
+	    int i=0, j=0, k=0;
+	    while (i<x.n && j<y.n) {
+		if (x.values[i]<y.values[j])
+		    i++;
+		else if (x.values[i]>y.values[j])
+		    j++;
+		else {
+		    c[k++]=x.values[i++];
+		    j++;
+		}
+	    }
+	    return new ArrayContainer(c,k);
+	}
+	if (a instanceof BitmapContainer && b instanceof BitmapContainer) {
+	    BitmapContainer x = (BitmapContainer)a, y = (BitmapContainer)b;
+	    BitmapContainer r = new BitmapContainer();
+	    for (int w=0;w<BITMAP_WORDS;w++) {
+		r.bits[w] = x.bits[w] & y.bits[w];
+		r.n += Long.bitCount(r.bits[w]);
+	    }
+	    return r.shrink();
+	}
+	ArrayContainer x = (ArrayContainer)(a instanceof ArrayContainer ? a : b);
+	BitmapContainer y = (BitmapContainer)(a instanceof ArrayContainer ? b : a);
+	char[] c = new char[Math.max(1,x.n)];
+	int k=0;
+	for (int i=0;i<x.n;i++) {
+	    if (y.contains(x.values[i]))
+		c[k++]=x.values[i];
+	}
+	return new ArrayContainer(c,k);
+    }
+
+    private static Container or(Container a, Container b) {
+	if (a instanceof ArrayContainer && b instanceof ArrayContainer) {
+	    ArrayContainer x = (ArrayContainer)a, y = (ArrayContainer)b;
+	    if (x.n+y.n>ARRAY_MAX) {
+		BitmapContainer r = x.toBitmap();
+		for (int j=0;j<y.n;j++)
+		    r.add(y.values[j]);
+		return r.shrink();
+	    }
+	    char[] c = new char[Math.max(1,x.n+y.n)];
+	    int i=0, j=0, k=0;
+	    while (i<x.n && j<y.n) {
+		if (x.values[i]<y.values[j])
+		    c[k++]=x.values[i++];
+		else if (x.values[i]>y.values[j])
+		    c[k++]=y.values[j++];
+		else {
+		    c[k++]=x.values[i++];
+		    j++;
+		}
+	    }
+	    while (i<x.n)
+		c[k++]=x.values[i++];
+	    while (j<y.n)
+		c[k++]=y.values[j++];
+	    return new ArrayContainer(c,k);
+	}
+	if (a instanceof BitmapContainer && b instanceof BitmapContainer) {
+	    BitmapContainer x = (BitmapContainer)a, y = (BitmapContainer)b;
+	    BitmapContainer r = new BitmapContainer();
+	    for (int w=0;w<BITMAP_WORDS;w++) {
+		r.bits[w] = x.bits[w] | y.bits[w];
+		r.n += Long.bitCount(r.bits[w]);
+	    }
+	    return r;
+	}
+	ArrayContainer x = (ArrayContainer)(a instanceof ArrayContainer ? a : b);
+	BitmapContainer r = (BitmapContainer)(a instanceof ArrayContainer ? b : a).copy();
+	for (int i=0;i<x.n;i++)
+	    r.add(x.values[i]);
+	return r;
+    }
+
+    private static Container andNot(Container a, Container b) {
+	if (a instanceof ArrayContainer) {
+	    ArrayContainer x = (ArrayContainer)a;
+	    char[] c = new char[Math.max(1,x.n)];
+	    int k=0;
+	    for (int i=0;i<x.n;i++) {
+		if (!b.contains(x.values[i]))
+		    c[k++]=x.values[i];
+	    }
+	    return new ArrayContainer(c,k);
+	}
+	BitmapContainer x = (BitmapContainer)a;
+	BitmapContainer r;
+	if (b instanceof BitmapContainer) {
+	    BitmapContainer y = (BitmapContainer)b;
+	    r = new BitmapContainer();
+	    for (int w=0;w<BITMAP_WORDS;w++) {
+		r.bits[w] = x.bits[w] & ~y.bits[w];
+		r.n += Long.bitCount(r.bits[w]);
+	    }
+	} else {
+	    ArrayContainer y = (ArrayContainer)b;
+	    r = (BitmapContainer)x.copy();
+	    for (int j=0;j<y.n;j++) {
+		char v = y.values[j];
+		if (r.contains(v)) {
+		    r.bits[v>>>6] &= ~(1L << v);
+		    r.n--;
+		}
+	    }
+	}
+	return r.shrink();
+    }
+
+    private static int andCardinality(Container a, Container b) {
+	if (a instanceof BitmapContainer && b instanceof BitmapContainer) {
+	    BitmapContainer x = (BitmapContainer)a, y = (BitmapContainer)b;
+	    int n=0;
+	    for (int w=0;w<BITMAP_WORDS;w++)
+		n += Long.bitCount(x.bits[w] & y.bits[w]);
+	    return n;
+	}
+	if (a instanceof ArrayContainer && b instanceof ArrayContainer) {
+	    ArrayContainer x = (ArrayContainer)a, y = (ArrayContainer)b;
+	    int i=0, j=0, n=0;
+	    while (i<x.n && j<y.n) {
+		if (x.values[i]<y.values[j])
+		    i++;
+		else if (x.values[i]>y.values[j])
+		    j++;
+		else {
+		    n++;
+		    i++;
+		    j++;
+		}
+	    }
+	    return n;
+	}
+	ArrayContainer x = (ArrayContainer)(a instanceof ArrayContainer ? a : b);
+	Container y = a instanceof ArrayContainer ? b : a;
+	int n=0;
+	for (int i=0;i<x.n;i++) {
+	    if (y.contains(x.values[i]))
+		n++;
+	}
+	return n;
+    }
+}
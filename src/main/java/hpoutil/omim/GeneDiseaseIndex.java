@@ -0,0 +1,93 @@
+package hpoutil.omim;
+
+
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Inverted index from genes to diseases. For every gene id of the
+ * {@link GeneRegistry} of {@link DiseaseAnnotation}, the index holds the sorted MIM ids
+ * of the diseases that have the gene as a (germline) disease gene. The classification
+ * uses the index to restrict a gene-constrained definition to the diseases with one of
+ * its genes, instead of testing the genes of every disease.
+ * @author Peter Robinson
+ * @version 0.1 (26 May 2015)
+ */
+public class GeneDiseaseIndex {
+
+    private static final int[] NO_DISEASES = new int[0];
+
+    /** diseases[g]: sorted MIM ids of the diseases with the gene whose id is g. */
+    private final int[][] diseases;
+    /** Number of diseases in the index. */
+    private final int diseaseCount;
+
+    /**
+     * @param diseasemap Key: MIM id, value: the disease with its genes (the annotations
+     * are not needed, so deferred diseases are not parsed; deferred diseases that were
+     * found to be invalid are skipped, the others are skipped by the classification)
+     */
+    public GeneDiseaseIndex(Map<Integer,DiseaseAnnotation> diseasemap) {
+	ArrayList<Integer> ids = new ArrayList<Integer>();
+	for (Map.Entry<Integer,DiseaseAnnotation> e : diseasemap.entrySet()) {
+	    DiseaseAnnotation da = e.getValue();
+	    if (da.isPending() || da.isValid())
+		ids.add(e.getKey());
+	}
+	Collections.sort(ids);
+	this.diseaseCount=ids.size();
+	int n = DiseaseAnnotation.getGeneRegistry().size();
+	int[] count = new int[n];
+	for (Integer id : ids) {
+	    for (int g : diseasemap.get(id).getGeneIds())
+		count[g]++;
+	}
+	this.diseases = new int[n][];
+	for (int g=0;g<n;g++)
+	    this.diseases[g] = count[g]==0 ? NO_DISEASES : new int[count[g]];
+	int[] pos = new int[n];
+	for (Integer id : ids) {
+	    for (int g : diseasemap.get(id).getGeneIds())
+		this.diseases[g][pos[g]++] = id;
+	}
+    }
+
+    /** @return number of diseases in the index. */
+    public int getDiseaseCount() { return this.diseaseCount; }
+
+    /**
+     * @param geneId id of a gene in the registry of {@link DiseaseAnnotation}
+     * @return sorted MIM ids of the diseases with the gene (empty for genes that were
+     * interned after the index was built; the array must not be modified)
+     */
+    public int[] getDiseases(int geneId) {
+	return geneId>=0 && geneId<this.diseases.length ? this.diseases[geneId] : NO_DISEASES;
+    }
+
+    /** @return sorted MIM ids of the diseases with at least one of the genes. */
+    public int[] getDiseases(int[] geneIds) {
+	if (geneIds.length==1)
+	    return getDiseases(geneIds[0]);
+	int[] u = NO_DISEASES;
+	for (int g : geneIds)
+	    u = SortedInts.union(u,getDiseases(g));
+	return u;
+    }
+
+    /** @return Estimate of the heap memory used by the posting lists in bytes. */
+    public long getMemoryUsage() {
+	long bytes = 16L + 8L*this.diseases.length;
+	for (int[] p : this.diseases) {
+	    if (p.length>0)
+		bytes += 16L + 4L*p.length;
+	}
+	return bytes;
+    }
+
+    public String toString() {
+	return String.format("GeneDiseaseIndex: %d diseases, %d genes, %.1f MB",
+			     this.diseaseCount,this.diseases.length,getMemoryUsage()/(1024.0*1024.0));
+    }
+}
@@ -0,0 +1,70 @@
+package hpoutil.omim;
+
+
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+
+/**
+ * Assigns dense int ids (0, 1, 2, ...) to gene symbols, so that the genes of a disease
+ * can be stored as a sorted int[] and compared without string comparisons. The genes
+ * of the morbid map are interned when it is parsed; other symbols, e.g., the genes of
+ * the nosology definitions, get the next free id when they are first interned. A symbol
+ * keeps its id for the lifetime of the registry.
+ * @author Peter Robinson
+ * @version 0.1 (26 May 2015)
+ */
+public class GeneRegistry {
+
+    /** Key: gene symbol, value: its id. */
+    private final HashMap<String,Integer> ids = new HashMap<String,Integer>();
+    /** symbols.get(i): the symbol with id i. */
+    private final ArrayList<String> symbols = new ArrayList<String>();
+
+    /** @return the id of the symbol; a new id is assigned to symbols that were not interned before. */
+    public synchronized int intern(String symbol) {
+	Integer id = this.ids.get(symbol);
+	if (id==null) {
+	    id = this.symbols.size();
+	    this.ids.put(symbol,id);
+	    this.symbols.add(symbol);
+	}
+	return id;
+    }
+
+    /** @return the sorted ids of the symbols, without duplicates (symbols are interned as needed). */
+    public synchronized int[] intern(Collection<String> lst) {
+	int[] a = new int[lst.size()];
+	int n=0;
+	for (String symbol : lst)
+	    a[n++]=intern(symbol);
+	java.util.Arrays.sort(a);
+	int k=0;
+	for (int i=0;i<n;i++) {
+	    if (k==0 || a[i]!=a[k-1])
+		a[k++]=a[i];
+	}
+	return k==a.length ? a : java.util.Arrays.copyOf(a,k);
+    }
+
+    /** @return the id of the symbol, or -1 if the symbol was never interned. */
+    public synchronized int getId(String symbol) {
+	Integer id = this.ids.get(symbol);
+	return id==null ? -1 : id;
+    }
+
+    /** @return the symbol with the given id. */
+    public synchronized String getSymbol(int id) {
+	return this.symbols.get(id);
+    }
+
+    /** @return number of interned symbols (all ids are smaller than this number). */
+    public synchronized int size() {
+	return this.symbols.size();
+    }
+
+    public String toString() {
+	return String.format("GeneRegistry: %d gene symbols",size());
+    }
+}
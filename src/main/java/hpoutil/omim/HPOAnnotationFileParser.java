@@ -5,14 +5,42 @@ package hpoutil.omim;
 import org.apache.log4j.Logger;
 //import org.apache.log4j.PropertyConfigurator;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
 import hpoutil.omim.*;
+import hpoutil.ontology.HPO;
 
 /**
  * This class is intended to parse all of the annotation files
  * for individual OMIM diseases.
+ * <p>
+ * The files are read and parsed by a fixed pool of threads. Because reading
+ * many small files from network storage is mostly waiting for I/O, the default
+ * pool has more threads than there are processors. The results are put into the
+ * disease map in the lexicographic order of the file paths, so that the map does
+ * not depend on the number of threads or on the order in which the files are
+ * listed. Files that cannot be parsed are recorded (see {@link #getErrors}) and skipped.
+ * <p>
+ * Instead of a directory, a zip archive of the annotation files can be given. The
+ * archive is read sequentially, and each entry is handed to the pool for parsing as
+ * soon as it has been decompressed; nothing is written to disk.
+ * <p>
+ * With {@link #deferred}, the files are not read at all; the disease map holds
+ * deferred {@link DiseaseAnnotation} objects that parse their file on first use.
  * @author Peter Robinson
- * @version 0.02 (7 March 2015)
+ * @version 0.03 (14 May 2015)
  */
 public class HPOAnnotationFileParser {
 
@@ -20,31 +48,201 @@ public class HPOAnnotationFileParser {
 
     HashMap<Integer,DiseaseAnnotation> diseasemap=null;
 
+    /** Error messages for the files that could not be parsed. */
+    private List<String> errors=new ArrayList<String>();
+    /** Number of files parsed so far (by all threads). */
+    private final AtomicInteger parsed = new AtomicInteger();
 
+    /** @return default number of threads for reading the annotation files. */
+    public static int getDefaultThreadCount() {
+	return Math.min(32,4*Runtime.getRuntime().availableProcessors());
+    }
 
     public HPOAnnotationFileParser(String directorypath) {
-	log.info("Parsing annotation files from " + directorypath);
+	this(directorypath,getDefaultThreadCount());
+    }
+
+    /**
+     * @param directorypath directory with the annotation files (OMIM-123456.tab)
+     * @param nThreads number of threads used to read and parse the files
+     */
+    public HPOAnnotationFileParser(String directorypath, int nThreads) {
+	this(directorypath,nThreads,null);
+    }
+
+    /**
+     * @param directorypath directory with the annotation files (OMIM-123456.tab)
+     * @param nThreads number of threads used to read and parse the files
+     * @param cachePath path of an {@link AnnotationCache} (created or updated), or null to parse all files
+     */
+    public HPOAnnotationFileParser(String directorypath, int nThreads, String cachePath) {
+	this.diseasemap=new HashMap<Integer,DiseaseAnnotation>();
+	if (isZipArchive(directorypath)) {
+	    if (cachePath!=null)
+		log.warn("The annotation cache is not used for zip archives");
+	    parseArchive(directorypath,nThreads);
+	    return;
+	}
+	final AnnotationCache cache = cachePath==null ? null : new AnnotationCache(cachePath);
+	log.info("Parsing annotation files from " + directorypath + " with " + nThreads + " threads");
 	List<String> filePaths = getHPOAnnotationFiles(directorypath);
+	Collections.sort(filePaths);
+	ExecutorService pool = Executors.newFixedThreadPool(Math.max(1,nThreads));
+	List<Future<DiseaseAnnotation>> futures = new ArrayList<Future<DiseaseAnnotation>>(filePaths.size());
+	for (final String p:filePaths) {
+	    futures.add(pool.submit(new Callable<DiseaseAnnotation>() {
+		    public DiseaseAnnotation call() throws java.io.IOException {
+			DiseaseAnnotation da = cache==null ? new DiseaseAnnotation(p) : cache.get(p);
+			reportProgress();
+			return da;
+		    }
+		}));
+	}
+	collectResults(pool,filePaths,futures);
+	if (cache!=null) {
+	    log.info(String.format("Annotation cache: %d files unchanged, %d parsed",cache.getHits(),cache.getMisses()));
+	    try {
+		cache.write(cachePath);
+	    } catch (java.io.IOException e) {
+		this.errors.add("Could not write annotation cache " + cachePath + ": " + e.getMessage());
+	    }
+	}
+    }
+
+    private HPOAnnotationFileParser() {
 	this.diseasemap=new HashMap<Integer,DiseaseAnnotation>();
-	int c=0;
-	for (String p:filePaths) {
-	    DiseaseAnnotation da = new DiseaseAnnotation(p);
+    }
+
+    /**
+     * List the annotation files of a directory without parsing them. The MIM id of
+     * each disease is taken from the file name (OMIM-123456.tab); the file is parsed
+     * when the disease's name or annotations are first needed.
+     * @param directorypath directory with the annotation files
+     * @param hpo ontology used to normalize the annotations when a file is parsed
+     */
+    public static HPOAnnotationFileParser deferred(String directorypath, HPO hpo) {
+	HPOAnnotationFileParser parser = new HPOAnnotationFileParser();
+	List<String> filePaths = getHPOAnnotationFiles(directorypath);
+	Collections.sort(filePaths);
+	for (String p : filePaths) {
+	    Integer mim = parseMimFromFileName(p);
+	    if (mim==null) {
+		parser.errors.add("Could not get a MIM id from the file name " + p);
+		continue;
+	    }
+	    parser.diseasemap.put(mim,DiseaseAnnotation.deferred(mim,p,hpo));
+	}
+	log.info("Deferred parsing of " + parser.diseasemap.size() + " annotation files");
+	return parser;
+    }
+
+    /** @return the MIM id of a file named OMIM-123456.tab, or null */
+    public static Integer parseMimFromFileName(String path) {
+	String name = new File(path).getName();
+	int start = name.indexOf('-')+1;
+	int end = name.indexOf('.',start);
+	if (start==0 || end<0)
+	    return null;
+	try {
+	    return Integer.parseInt(name.substring(start,end));
+	} catch (NumberFormatException e) {
+	    return null;
+	}
+    }
+
+    /** @return true if path is a zip archive (rather than a directory of annotation files). */
+    public static boolean isZipArchive(String path) {
+	return path.toLowerCase().endsWith(".zip") && new File(path).isFile();
+    }
+
+    /**
+     * Read the annotation files from a zip archive. The entries are decompressed on
+     * the calling thread and parsed by the pool.
+     */
+    private void parseArchive(String zipPath, int nThreads) {
+	log.info("Parsing annotation files from archive " + zipPath + " with " + nThreads + " threads");
+	ExecutorService pool = Executors.newFixedThreadPool(Math.max(1,nThreads));
+	/* Key: name of the entry; sorted, so that the map does not depend on the order in the archive. */
+	TreeMap<String,Future<DiseaseAnnotation>> entries = new TreeMap<String,Future<DiseaseAnnotation>>();
+	try {
+	    ZipInputStream zin = new ZipInputStream(new BufferedInputStream(new FileInputStream(zipPath),1<<16));
+	    try {
+		ZipEntry entry;
+		byte[] buffer = new byte[1<<16];
+		while ((entry=zin.getNextEntry())!=null) {
+		    String name = entry.getName();
+		    String basename = name.substring(name.lastIndexOf('/')+1);
+		    if (entry.isDirectory() || !basename.startsWith("OMIM") || basename.endsWith("~"))
+			continue;
+		    ByteArrayOutputStream bytes = new ByteArrayOutputStream(entry.getSize()>0 ? (int)entry.getSize() : 1<<12);
+		    int n;
+		    while ((n=zin.read(buffer))>0)
+			bytes.write(buffer,0,n);
+		    final String path = zipPath + "!/" + name;
+		    final byte[] contents = bytes.toByteArray();
+		    entries.put(path,pool.submit(new Callable<DiseaseAnnotation>() {
+			    public DiseaseAnnotation call() {
+				DiseaseAnnotation da = new DiseaseAnnotation(path,new ByteArrayInputStream(contents));
+				reportProgress();
+				return da;
+			    }
+			}));
+		}
+	    } finally {
+		zin.close();
+	    }
+	} catch (IOException e) {
+	    this.errors.add("Could not read annotation archive " + zipPath + ": " + e.getMessage());
+	}
+	log.info("Compiled a total of " + entries.size()+ " annotation files.");
+	collectResults(pool,new ArrayList<String>(entries.keySet()),new ArrayList<Future<DiseaseAnnotation>>(entries.values()));
+    }
+
+    private void reportProgress() {
+	int n = this.parsed.incrementAndGet();
+	if (n%1000==0) {
+	    log.info("Parsed " + n + " HPO annotation files");
+	    System.out.println("Parsed " + n + " HPO annotation files");
+	}
+    }
+
+    /**
+     * Wait for the parsed files and put them into the disease map in the order of paths.
+     * @param futures futures.get(i) parses paths.get(i)
+     */
+    private void collectResults(ExecutorService pool, List<String> filePaths, List<Future<DiseaseAnnotation>> futures) {
+	pool.shutdown();
+	for (int i=0;i<filePaths.size();i++) {
+	    String p = filePaths.get(i);
+	    DiseaseAnnotation da=null;
+	    try {
+		da = futures.get(i).get();
+	    } catch (ExecutionException e) {
+		this.errors.add("Error extracting Disease Annotations for " + p + ": " + e.getCause());
+		continue;
+	    } catch (InterruptedException e) {
+		Thread.currentThread().interrupt();
+		this.errors.add("Interrupted while parsing " + p);
+		break;
+	    }
 	    if (!da.isValid()) {
-    		System.out.println("Error extracting Disease Annotations for " + p);
-    		System.out.println(da);
-    		System.exit(1);
+		this.errors.add("Error extracting Disease Annotations for " + p + ": " + da);
+		continue;
 	    }
 	    diseasemap.put(da.MIMid(),da);
-	    c++;
-	    if (c%1000==0) {
-		log.info("Parsed " + c + " HPO annotation files");
-		System.out.println("Parsed " + c + " HPO annotation files");
-	    }
 	}
+	if (Thread.currentThread().isInterrupted())
+	    pool.shutdownNow();
     }
 
     public HashMap<Integer,DiseaseAnnotation> getDiseaseMap() { return this.diseasemap; }
 
+    /**
+     * @return one error message for each annotation file that could not be parsed
+     * (empty if all files were parsed).
+     */
+    public List<String> getErrors() { return this.errors; }
+
 
 
 
@@ -54,7 +252,7 @@ public class HPOAnnotationFileParser {
      * The files are the "small files" each of which contains the annotations
      * for a single disease, e.g., <b>OMIM-123456.tab</b>.
      */
-    private List<String> getHPOAnnotationFiles(String annotationsFolder) {
+    public static List<String> getHPOAnnotationFiles(String annotationsFolder) {
 	log.info("Finding all annotation files from directory: "  + annotationsFolder);
 	List<String> paths = new ArrayList<String>();
 	File folder = new File(annotationsFolder);
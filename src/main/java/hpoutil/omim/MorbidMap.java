@@ -1,7 +1,6 @@
 package hpoutil.omim;
 
 import java.io.BufferedReader;
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.util.ArrayList;
@@ -12,6 +11,8 @@ import java.util.Map;
 
 import org.apache.log4j.Logger;
 
+import hpoutil.io.BackgroundInputStream;
+
 /**
  * A container for morbid map to get gene identifiers for a given MIM numbers.
  * 
@@ -23,45 +24,46 @@ public class MorbidMap {
     /** Key: an OMIM id (phenotype), value: a list of the corresponding diseases. Note there may be multiple
      * entries of there is a susceptibility entry and an germline Mendelian entry (the OMIM data are mixed up)*/
     private HashMap<Integer, List<OMIMDisease>> disease2gene_map;
+    /**
+     * Key: an OMIM id, value: the entries of the id, one for each combination of
+     * somatic and modifier (see {@link #slot}). Only used while the file is parsed.
+     */
+    private HashMap<Integer, Entries> entries;
+    /** Number of lines that were read from the morbid map file. */
+    private int lineCount=0;
+
+    /** The (at most four) entries of one OMIM id. */
+    private static final class Entries {
+	/** The entry for each slot, null if the morbid map has no line for the slot. */
+	final OMIMDisease[] bySlot = new OMIMDisease[4];
+	/** Number of the line that last added genes to the entry of each slot. */
+	final int[] lastLine = new int[4];
+    }
 
 
     public HashMap<Integer, List<OMIMDisease>>  getOMIMDiseaseMap() { return this.disease2gene_map; }
+
+    /** @return number of lines that were read from the morbid map file (including skipped lines). */
+    public int getLineCount() { return this.lineCount; }
     
     public MorbidMap(String morbid_map_path) {
 	disease2gene_map = new HashMap<Integer, List<OMIMDisease>>();
+	entries = new HashMap<Integer, Entries>();
 	parseMorbidMapFile(morbid_map_path);
+	fillDiseaseMap();
+	entries = null;
 	
 	//debugPrint();
 
 	log.info("Got a total of " + disease2gene_map.size() + " diseases from morbidmap");
-	/*
-	int one=0;
-	int more=0;
-	for (Integer id : disease2gene_map.keySet()) {
-	    List<OMIMDisease> l = disease2gene_map.get(id);
-	    if (l.size()==1) {
-		one++;
-	    } else if (l.size()>1) {
-		System.out.println("MULTPLE ODs for id " + id);
-		for (OMIMDisease od:l) {
-		    System.out.println(od);
-		}
-		more++;
-	    } else {
-		System.out.println("No diseases found for id, major problem");
-		System.exit(1);
-	    }
-	}
-	System.out.println("one=" + one + ", more=" + more);
-		System.exit(1);
-	*/
     }
 
 	/**
 	 * Create the morbid map from the given file. A typical line looks as
 	 * {@code Marfan syndrome, 154700 (3)|FBN1, MFS1, WMS2, SSKS, GPHYSD2, ACMICD|134797|15q21.1}
 	 * with 154700 being the the phenotype MIM Number for the disease Marfan
-	 * syndrome.
+	 * syndrome. Tab-separated files (morbidmap.txt) are also accepted; blank lines and
+	 * comment lines (starting with #) are skipped. Files ending with .gz are decompressed.
 	 * 
 	 * @param file
 	 * @return the morbid map at your service
@@ -70,29 +72,22 @@ public class MorbidMap {
 	private void parseMorbidMapFile(String morbid_map_path) {
 	    log.trace("Processing Morbidmap file " + morbid_map_path);
 	    try {
-		FileInputStream fstream = new FileInputStream(morbid_map_path);
-		BufferedReader br = new BufferedReader(new InputStreamReader(fstream));
+		BufferedReader br = new BufferedReader(new InputStreamReader(BackgroundInputStream.open(morbid_map_path)),1<<16);
 		
 		int c = 0;
 		int unparsable = 0;
 		
 		String line;
 		while ((line = br.readLine()) != null) {
+		    lineCount++;
+		    if (line.length() == 0 || line.charAt(0) == '#')
+			continue;
 		    OMIMDisease omim = new OMIMDisease(line);
 		    if (omim.is_unparsable()) {
 			unparsable++;
 			continue; // SKip entry, could not parse it
 		    }
-		    
-		    Integer omim_id = omim.getOMIM_ID();
-		    if (disease2gene_map.containsKey(omim_id)) {
-			checkAndAdd(omim);
-		    } else {
-			List<OMIMDisease> list = new ArrayList<OMIMDisease>();
-			list.add(omim);
-			disease2gene_map.put(omim_id, list);
-		    }
-		    //				disease2gene_map.put(omim_id, omim);
+		    add(omim);
 		    c++;
 		}
 		br.close();
@@ -104,6 +99,58 @@ public class MorbidMap {
 	    }
 	}
 
+    /** @return the index of the entry of a disease in {@link Entries#bySlot}. */
+    private static int slot(OMIMDisease omim) {
+	return (omim.is_somatic() ? 2 : 0) + (omim.is_modifier() ? 1 : 0);
+    }
+
+    /**
+     * Add a line to the entries of its OMIM id; a line with the same somatic and modifier
+     * flags as an earlier line of the id is merged into the entry of the earlier line.
+     */
+    private void add(OMIMDisease omim) {
+	Integer omim_id = omim.getOMIM_ID();
+	Entries e = entries.get(omim_id);
+	if (e == null) {
+	    e = new Entries();
+	    entries.put(omim_id, e);
+	    /* The list is filled at the end; putting it now keeps the order of the ids in the map. */
+	    disease2gene_map.put(omim_id, new ArrayList<OMIMDisease>(1));
+	}
+	int s = slot(omim);
+	if (e.bySlot[s] == null)
+	    e.bySlot[s] = omim;
+	else
+	    e.bySlot[s].merge(omim);
+	e.lastLine[s] = lineCount;
+    }
+
+    /**
+     * Fill the lists of {@link #disease2gene_map} and assign ids to the genes of all
+     * entries (see {@link DiseaseAnnotation#getGeneRegistry}). The entries of an id are ordered by
+     * the line that last added genes to them (a merged entry used to be moved to the
+     * end of the list).
+     */
+    private void fillDiseaseMap() {
+	for (Map.Entry<Integer, Entries> me : entries.entrySet()) {
+	    Entries e = me.getValue();
+	    List<OMIMDisease> list = disease2gene_map.get(me.getKey());
+	    int last = 0;
+	    while (true) {
+		int next = -1;
+		for (int s = 0; s < 4; s++) {
+		    if (e.bySlot[s] != null && e.lastLine[s] > last && (next < 0 || e.lastLine[s] < e.lastLine[next]))
+			next = s;
+		}
+		if (next < 0)
+		    break;
+		e.bySlot[next].internGenes();
+		list.add(e.bySlot[next]);
+		last = e.lastLine[next];
+	    }
+	}
+    }
+
 
     public void debugPrint() {
 	System.out.println(" === MORBID MAP === ");
@@ -118,29 +165,6 @@ public class MorbidMap {
 
 
     
-    private void checkAndAdd(OMIMDisease omim) {
-	List<OMIMDisease> list = disease2gene_map.get(omim.getOMIM_ID());
-	int found = -1;
-	for (int i = 0; i < list.size(); i++) {
-	    OMIMDisease disease = list.get(i);
-	    if (disease.sameAs(omim)) {
-		found = i;
-		break;
-	    }
-	}
-	
-	if (found != -1) {
-	    OMIMDisease disease = list.get(found);
-	    list.remove(found);
-	    disease.merge(omim);
-	    list.add(disease);
-	    disease2gene_map.put(omim.getOMIM_ID(), list);
-	} else {
-	    list.add(omim);
-	    disease2gene_map.put(omim.getOMIM_ID(), list);
-	}
-    }
-    
     public boolean containsGeneInformation(String mim) {
 	return this.disease2gene_map.containsKey(mim);
     }
@@ -206,10 +230,24 @@ public class MorbidMap {
       return (d == null) ? null : d.is_modifier();
       }
     */
+    /**
+     * Measure the parsing throughput.
+     * Usage: MorbidMap morbidmap [rounds]
+     */
     public static void main(String[] args) {
-	MorbidMap morbidMap = new MorbidMap("/home/tudor/EXTRA_SPACE/NEW_Charite/morbidmap");
-	System.out.println(morbidMap.getGenesInfo("109800"));
-	//		System.out.println(morbidMap.containsGeneInformation("109800"));
-	//		System.out.println(morbidMap.get_gene("109800"));
+	if (args.length<1) {
+	    System.err.println("Usage: MorbidMap morbidmap [rounds]");
+	    System.exit(1);
+	}
+	int rounds = args.length>1 ? Integer.parseInt(args[1]) : 10;
+	double mb = new java.io.File(args[0]).length()/(1024.0*1024.0);
+	for (int r=0;r<rounds;r++) {
+	    long start = System.nanoTime();
+	    MorbidMap morbidMap = new MorbidMap(args[0]);
+	    long nanos = System.nanoTime()-start;
+	    System.out.println(String.format("Round %d: %d lines, %d diseases in %.1f ms (%.0f lines/s, %.1f MB/s)",
+					     r+1,morbidMap.getLineCount(),morbidMap.getOMIMDiseaseMap().size(),nanos/1e6,
+					     morbidMap.getLineCount()*1e9/nanos,mb*1e9/nanos));
+	}
     }
 }
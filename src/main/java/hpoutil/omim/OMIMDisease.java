@@ -1,7 +1,7 @@
 package hpoutil.omim;
 
 import java.util.ArrayList;
-import java.util.List;
+import java.util.LinkedHashSet;
 
 /**
  * This class represents a single line in the OMIM Morbid map file Essential
@@ -13,7 +13,13 @@ import java.util.List;
 
 public class OMIMDisease {
 
-    private ArrayList<String> genes;
+    /** Separators of the gene field, from the outermost to the innermost level. */
+    private static final char[] GENE_SEPARATORS = { ',', ';', '.' };
+
+    /** The genes (symbols and aliases) of this entry, in the order of the morbid map. */
+    private LinkedHashSet<String> genes;
+    /** Sorted ids of {@link #genes} in the registry of {@link DiseaseAnnotation}; null until interned. */
+    private int[] geneIds=null;
     
     /** Integer representation of the OMIM id, e.g., for OMIM:123456, store 123456 as an Integer. */
     private Integer omim_id = null;
@@ -31,40 +37,41 @@ public class OMIMDisease {
     private boolean is_unparsable = false;
     
     public OMIMDisease(String line) {
-	this.genes = new ArrayList<String>();
+	this.genes = new LinkedHashSet<String>();
 	parse_line(line);
     }
     
+    /**
+     * Parse a line in a single pass over its characters, without splitting it into
+     * substrings. The fields are separated by '|' (morbidmap) or, if the line has no '|',
+     * by tabs (morbidmap.txt); only the first two fields (name and genes) are used.
+     */
     private void parse_line(String line) {
-	String[] segments = line.split("\\|");
-	
-	String nameField = segments[0];
-	String geneField = segments[1];
+	char sep = line.indexOf('|')>=0 ? '|' : '\t';
+	int nameEnd = line.indexOf(sep);
+	if (nameEnd < 0) {
+	    this.is_unparsable = true;
+	    return;
+	}
+	int geneEnd = line.indexOf(sep,nameEnd+1);
+	if (geneEnd < 0)
+	    geneEnd = line.length();
 	
 	// The name field contains, somewhere, the MIM number.
 	// Look for six digits following one another
-	boolean previousCharIsDigit = false;
 	int n_digits = 0;
-	int len = nameField.length();
-	int pos = 0;
-	while (pos < len) {
-	    if (Character.isDigit(nameField.charAt(pos))) {
-		if (previousCharIsDigit) {
-		    n_digits++;
-		    if (n_digits == 6) {
-			String omim = nameField.substring(pos - 5, pos + 1);
-			this.omim_id=Integer.parseInt(omim); 
-			break;
-		    }
-		} else {
-		    n_digits = 1;
-		    previousCharIsDigit = true;
-		}
-	    } else {
+	for (int pos=0; pos<nameEnd; pos++) {
+	    if (!Character.isDigit(line.charAt(pos))) {
 		n_digits = 0;
-		previousCharIsDigit = false;
+		continue;
+	    }
+	    if (++n_digits == 6) {
+		int id = 0;
+		for (int k=pos-5; k<=pos; k++)
+		    id = 10*id + Character.digit(line.charAt(k),10);
+		this.omim_id = id;
+		break;
 	    }
-	    pos++; // current String index.
 	}
 	
 	if (this.omim_id == null) {
@@ -73,54 +80,60 @@ public class OMIMDisease {
 	}
 	
 	/* For somatic mutations, the nameField contains the word "Somatic" */
-	int i = nameField.indexOf("somatic");
-	if (i >= 0) {
-	    this.is_somatic = true;
-	}
+	this.is_somatic = inName(line,"somatic",nameEnd);
+	this.is_modifier = inName(line,"modifier",nameEnd) || inName(line,"modification",nameEnd);
 	
-	i = nameField.indexOf("modifier");
-	int j = nameField.indexOf("modification");
-	if (i >= 0 || j >= 0) {
-	    this.is_modifier = true;
-	}
-	
-	String geneSegments[] = geneField.split(",");
-	for (String geneSegment : geneSegments) {
-	    geneSegment = geneSegment.trim();
-	    String geneSegments2[] = geneSegment.split(";");
-	    for(String gene : geneSegments2) {
-		gene = gene.trim();
-		String geneSegments3[] = gene.split("\\.");
-		for(String geneG : geneSegments3) {
-		    geneG = geneG.trim();
-		    genes.add(geneG);
-		}
-	    }
-	}
+	addGenes(line,nameEnd+1,geneEnd,0);
 	
 	if (genes.size() == 0) {
 	    System.out.println("Could not parse morbid map line (gene): + \n\t" + line);
 	    is_unparsable = true;
 	    return;
 	}
-	/*
-	// Now get gene name or disease symbol. Just take the first symbol,
-	// we are not interested in all the synonyms for now.
-	String geneSegments[] = geneField.split(",");
-	this.gene = geneSegments[0];
-	int ix = gene.indexOf(";"); // Deal with names such as ABCD2;HF23
-	// (Protege cannot deal).
-	if (ix > 0) {
-	gene = gene.substring(0, ix);
+    }
+
+    /** @return true if word occurs in the name field, i.e., before position nameEnd. */
+    private static boolean inName(String line, String word, int nameEnd) {
+	int i = line.indexOf(word);
+	return i >= 0 && i + word.length() <= nameEnd;
+    }
+
+    /**
+     * Add the genes of line[from,to), which is split at the separator of the given
+     * level; each piece is trimmed and split at the separator of the next level. As
+     * with {@link String#split}, trailing empty pieces are dropped, and a field without
+     * any separator is a single (possibly empty) piece.
+     */
+    private void addGenes(String line, int from, int to, int level) {
+	if (level == GENE_SEPARATORS.length) {
+	    genes.add(line.substring(from,to));
+	    return;
+	}
+	char sep = GENE_SEPARATORS[level];
+	int i = line.indexOf(sep,from);
+	if (i < 0 || i >= to) {
+	    addPiece(line,from,to,level);
+	    return;
 	}
-	if (gene == null) {
-	System.out.println("Could not parse morbid map line (gene): + \n\t"
-	+ line);
-	is_unparsable = true;
-	return;
+	while (to > from && line.charAt(to-1) == sep)
+	    to--;
+	int start = from;
+	while (start < to) {
+	    int end = line.indexOf(sep,start);
+	    if (end < 0 || end > to)
+		end = to;
+	    addPiece(line,start,end,level);
+	    start = end+1;
 	}
-	
-	*/
+    }
+
+    /** Trim line[from,to) and split it at the separators of the next level. */
+    private void addPiece(String line, int from, int to, int level) {
+	while (from < to && line.charAt(from) <= ' ')
+	    from++;
+	while (to > from && line.charAt(to-1) <= ' ')
+	    to--;
+	addGenes(line,from,to,level+1);
     }
     
     public boolean sameAs(OMIMDisease disease) {
@@ -158,8 +171,21 @@ public class OMIMDisease {
 	return same;
     }
     
+    /** @return a copy of the genes of this entry, in the order of the morbid map. */
     public ArrayList<String> getGenes() {
-	return this.genes;
+	return new ArrayList<String>(this.genes);
+    }
+    
+    /** @return the sorted ids of the genes (see {@link DiseaseAnnotation#getGeneRegistry}); must not be modified. */
+    public int[] getGeneIds() {
+	if (this.geneIds == null)
+	    internGenes();
+	return this.geneIds;
+    }
+
+    /** Assign ids to the genes in the registry of {@link DiseaseAnnotation}. */
+    void internGenes() {
+	this.geneIds = DiseaseAnnotation.getGeneRegistry().intern(this.genes);
     }
     
     public Integer getOMIM_ID() {
@@ -179,11 +205,8 @@ public class OMIMDisease {
     }
     
     public void merge(OMIMDisease omim) {
-	for (String gene: omim.getGenes()) {
-	    if (!genes.contains(gene)) {
-		genes.add(gene);
-	    }
-	}
+	genes.addAll(omim.genes);
+	geneIds = null;
     }
     
     @Override
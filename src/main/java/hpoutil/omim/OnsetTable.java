@@ -0,0 +1,132 @@
+package hpoutil.omim;
+
+
+
+import java.util.HashMap;
+import java.util.TreeMap;
+
+import hpoutil.ontology.HPO;
+import hpoutil.ontology.Term;
+
+/**
+ * Maps age of onset labels (e.g., "Congenital onset") and onset terms
+ * (e.g., HP:0003577) to the age classes of {@link AnnotationItem}. The labels
+ * that are used in the per-disease annotation files are always known; if the
+ * table is created with an {@link HPO} object, the names, synonyms and ids of all
+ * terms in the onset subtree (below HP:0003674) are added as well, each with the
+ * age class of its closest classified ancestor (e.g., "Middle age onset" is
+ * below "Adult onset"). Labels are compared case-insensitively.
+ * @author Peter Robinson
+ * @version 0.1 (18 May 2015)
+ */
+public class OnsetTable {
+
+    /** HP:0003674, Onset. */
+    private static final int ONSET_ROOT = 3674;
+    /** Table with the labels of the annotation files only. */
+    public static final OnsetTable DEFAULT = new OnsetTable();
+
+    /** Key: onset label, value: age class. */
+    private final TreeMap<String,Integer> labels = new TreeMap<String,Integer>(String.CASE_INSENSITIVE_ORDER);
+    /** Key: Integer representation of an onset term, value: age class. */
+    private final HashMap<Integer,Integer> terms = new HashMap<Integer,Integer>();
+
+    public OnsetTable() {
+	addLabel("Congenital onset",AnnotationItem.CONGENITAL);
+	addLabel("Neonatal onset",AnnotationItem.NEONATAL);
+	addLabel("Infantile onset",AnnotationItem.INFANTILE);
+	addLabel("Onset in infancy",AnnotationItem.INFANTILE);
+	addLabel("Childhood onset",AnnotationItem.CHILDHOOD);
+	addLabel("Juvenile onset",AnnotationItem.CHILDHOOD);
+	addLabel("Onset in adolescence",AnnotationItem.ADULT);
+	addLabel("Adult onset",AnnotationItem.ADULT);
+	addLabel("Young adult onset",AnnotationItem.ADULT);
+	addLabel("Onset in early adulthood",AnnotationItem.ADULT);
+	addLabel("Late onset",AnnotationItem.ADULT);
+	this.terms.put(3577,AnnotationItem.CONGENITAL);
+	this.terms.put(3623,AnnotationItem.NEONATAL);
+	this.terms.put(3593,AnnotationItem.INFANTILE);
+	this.terms.put(11463,AnnotationItem.CHILDHOOD);
+	this.terms.put(3621,AnnotationItem.CHILDHOOD);
+	this.terms.put(3581,AnnotationItem.ADULT);
+	this.terms.put(11462,AnnotationItem.ADULT);
+	this.terms.put(3584,AnnotationItem.ADULT);
+    }
+
+    /**
+     * Add all terms of the onset subtree of hpo. The labels and terms of the
+     * default table take precedence.
+     */
+    public OnsetTable(HPO hpo) {
+	this();
+	if (!hpo.hasTerm(ONSET_ROOT))
+	    return;
+	/* Descendants are visited in topological order, so the class of every parent is known. */
+	int n = hpo.getTermCount();
+	int[] ageClass = new int[n];
+	java.util.Arrays.fill(ageClass,-1);
+	int root = hpo.getIndex(ONSET_ROOT);
+	ageClass[root] = AnnotationItem.DEFAULT_AGE_OF_ONSET;
+	for (int i=root+1;i<n;i++) {
+	    Term t = hpo.getTermAt(i);
+	    int c=-1;
+	    for (int p : t.getParentIdArray()) {
+		int k = hpo.getIndex(p);
+		if (k>=0 && ageClass[k]>=0 && (c<0 || c==AnnotationItem.DEFAULT_AGE_OF_ONSET))
+		    c = ageClass[k];
+	    }
+	    if (c<0)
+		continue; /* not in the onset subtree */
+	    Integer known = this.terms.get(t.getID());
+	    if (known!=null)
+		c = known;
+	    ageClass[i]=c;
+	    if (c==AnnotationItem.DEFAULT_AGE_OF_ONSET)
+		continue;
+	    this.terms.put(t.getID(),c);
+	    addLabelIfAbsent(t.getName(),c);
+	    for (String syn : t.getSynonyms())
+		addLabelIfAbsent(syn,c);
+	}
+    }
+
+    private void addLabel(String label, int ageClass) {
+	this.labels.put(label,ageClass);
+    }
+
+    private void addLabelIfAbsent(String label, int ageClass) {
+	if (!this.labels.containsKey(label))
+	    this.labels.put(label,ageClass);
+    }
+
+    /**
+     * @return a hash of the contents of the table; annotations whose age classes were
+     * computed with a table with a different fingerprint may have to be parsed again.
+     */
+    public long getFingerprint() {
+	long h = 17L;
+	for (java.util.Map.Entry<String,Integer> e : this.labels.entrySet())
+	    h = 31L*h + e.getKey().toLowerCase().hashCode()*37L + e.getValue();
+	for (Integer id : new java.util.TreeSet<Integer>(this.terms.keySet()))
+	    h = 31L*h + id*37L + this.terms.get(id);
+	return h;
+    }
+
+    /**
+     * @param label name of an onset term, e.g., Congenital onset
+     * @return the age class, or {@link AnnotationItem#DEFAULT_AGE_OF_ONSET} for unknown or empty labels
+     */
+    public int getAgeClass(String label) {
+	Integer c = this.labels.get(label);
+	return c==null ? AnnotationItem.DEFAULT_AGE_OF_ONSET : c;
+    }
+
+    /**
+     * @param id Integer representation of an onset term, e.g., 3577 for HP:0003577
+     * @return the age class, or {@link AnnotationItem#DEFAULT_AGE_OF_ONSET} for unknown terms
+     */
+    public int getAgeClassForTerm(int id) {
+	Integer c = this.terms.get(id);
+	return c==null ? AnnotationItem.DEFAULT_AGE_OF_ONSET : c;
+    }
+}
@@ -0,0 +1,172 @@
+package hpoutil.omim;
+
+
+
+import org.apache.log4j.Logger;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.*;
+
+import hpoutil.io.BackgroundInputStream;
+
+/**
+ * Parse the bulk annotation file of the HPO project, which contains the
+ * annotations of all diseases in one file. Two formats are supported:
+ * <ul>
+ * <li><b>phenotype.hpoa</b>: comment lines starting with #, then a header line
+ * (e.g., <i>database_id disease_name qualifier hpo_id ... onset ...</i>), with
+ * disease ids such as OMIM:123456.
+ * <li><b>phenotype_annotation.tab</b>: no header; the columns are DB, DB_Object_ID,
+ * DB_Name, Qualifier, HPO_ID, DB_Reference, Evidence_Code and Onset, ...
+ * </ul>
+ * The file is read in one sequential pass and the rows are grouped by disease.
+ * Only OMIM diseases are used; the onset is given as an HP id and is mapped to an
+ * age class with the {@link OnsetTable} of {@link DiseaseAnnotation}. A gzip-compressed
+ * file (e.g., phenotype.hpoa.gz) is decompressed on a separate thread while it is parsed.
+ * @author Peter Robinson
+ * @version 0.01 (15 May 2015)
+ */
+public class PhenotypeAnnotationParser {
+
+    private static Logger log = Logger.getLogger(PhenotypeAnnotationParser.class.getName());
+
+    HashMap<Integer,DiseaseAnnotation> diseasemap=null;
+
+    /** Error messages for the lines that could not be parsed. */
+    private List<String> errors=new ArrayList<String>();
+
+    /* Column indices; the defaults are those of phenotype_annotation.tab. */
+    private int colDb=0;
+    private int colId=1;
+    private int colName=2;
+    private int colQualifier=3;
+    private int colHpo=4;
+    private int colOnset=7;
+
+    public PhenotypeAnnotationParser(String path) {
+	log.info("Parsing bulk annotation file " + path);
+	/* Keep the diseases in the order of the file while parsing. */
+	LinkedHashMap<Integer,DiseaseAnnotation> grouped = new LinkedHashMap<Integer,DiseaseAnnotation>();
+	try {
+	    BufferedReader br = new BufferedReader(new InputStreamReader(BackgroundInputStream.open(path)),1<<16);
+	    try {
+		parse(br,grouped);
+	    } finally {
+		br.close();
+	    }
+	} catch (IOException e) {
+	    this.errors.add("Could not read " + path + ": " + e.getMessage());
+	}
+	/* Add the diseases in the order of the MIM ids, as for the per-disease files (OMIM-123456.tab). */
+	ArrayList<Integer> ids = new ArrayList<Integer>(grouped.keySet());
+	Collections.sort(ids);
+	this.diseasemap = new HashMap<Integer,DiseaseAnnotation>();
+	for (Integer id : ids) {
+	    DiseaseAnnotation da = grouped.get(id);
+	    if (!da.isValid()) {
+		this.errors.add("Error extracting Disease Annotations for " + da);
+		continue;
+	    }
+	    this.diseasemap.put(id,da);
+	}
+	log.info("Parsed annotations for " + this.diseasemap.size() + " diseases");
+    }
+
+    public HashMap<Integer,DiseaseAnnotation> getDiseaseMap() { return this.diseasemap; }
+
+    /** @return one error message for each line (or disease) that could not be parsed. */
+    public List<String> getErrors() { return this.errors; }
+
+    private void parse(BufferedReader br, Map<Integer,DiseaseAnnotation> grouped) throws IOException {
+	String line;
+	int lineNo=0;
+	boolean combinedId=false; /* phenotype.hpoa has OMIM:123456 in one column */
+	while ((line=br.readLine())!=null) {
+	    lineNo++;
+	    if (line.isEmpty())
+		continue;
+	    if (line.startsWith("#") || line.startsWith("database_id") || line.startsWith("DatabaseID")) {
+		if (line.indexOf('\t')>=0 && parseHeader(line))
+		    combinedId=true;
+		continue;
+	    }
+	    String[] fields = line.split("\t",-1);
+	    String db, id;
+	    if (combinedId) {
+		if (fields.length<=Math.max(Math.max(colId,colName),Math.max(colQualifier,colHpo))) {
+		    this.errors.add("Missing columns in line " + lineNo + ": " + line);
+		    continue;
+		}
+		String s = fields[colId];
+		int x = s.indexOf(':');
+		db = x<0 ? "" : s.substring(0,x);
+		id = s.substring(x+1);
+	    } else {
+		if (fields.length<=colHpo) {
+		    this.errors.add("Missing columns in line " + lineNo + ": " + line);
+		    continue;
+		}
+		db = fields[colDb];
+		id = fields[colId];
+	    }
+	    if (!db.equals("OMIM") && !db.equals("MIM"))
+		continue;
+	    Integer mim;
+	    AnnotationItem item;
+	    try {
+		mim = Integer.parseInt(id.trim());
+		item = new AnnotationItem(fields[colHpo].trim(),fields[colQualifier].equalsIgnoreCase("NOT"));
+		if (colOnset>=0 && colOnset<fields.length) {
+		    String onset = fields[colOnset].trim();
+		    if (onset.startsWith("HP:")) {
+			int onsetId = Integer.parseInt(onset.substring(3));
+			item.setAgeClass(DiseaseAnnotation.getOnsetTable().getAgeClassForTerm(onsetId));
+		    }
+		}
+	    } catch (IllegalArgumentException e) {
+		this.errors.add("Could not parse line " + lineNo + " (" + e.getMessage() + "): " + line);
+		continue;
+	    }
+	    DiseaseAnnotation da = grouped.get(mim);
+	    if (da==null) {
+		da = new DiseaseAnnotation(mim,fields[colName]);
+		grouped.put(mim,da);
+	    }
+	    da.addAnnotationItem(item);
+	}
+    }
+
+    /**
+     * Determine the column indices from the header of a phenotype.hpoa file
+     * (the column names are compared case-insensitively and without underscores).
+     * @return true if the line is a header, i.e., it has an HPO id column
+     */
+    private boolean parseHeader(String line) {
+	if (line.startsWith("#"))
+	    line = line.substring(1);
+	String[] fields = line.split("\t");
+	int id=-1, name=-1, qualifier=-1, hpo=-1, onset=-1;
+	for (int i=0;i<fields.length;i++) {
+	    String f = fields[i].trim().replace("_","").toLowerCase();
+	    if (f.equals("databaseid"))
+		id=i;
+	    else if (f.equals("diseasename"))
+		name=i;
+	    else if (f.equals("qualifier"))
+		qualifier=i;
+	    else if (f.equals("hpoid"))
+		hpo=i;
+	    else if (f.equals("onset"))
+		onset=i;
+	}
+	if (id<0 || name<0 || qualifier<0 || hpo<0)
+	    return false;
+	colId=id;
+	colName=name;
+	colQualifier=qualifier;
+	colHpo=hpo;
+	colOnset=onset;
+	return true;
+    }
+}
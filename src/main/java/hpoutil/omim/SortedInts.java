@@ -0,0 +1,68 @@
+package hpoutil.omim;
+
+
+
+/**
+ * Set operations on sorted int arrays without duplicates, e.g., the MIM ids of the
+ * posting lists of {@link TermDiseaseIndex} and {@link GeneDiseaseIndex}, or the
+ * gene ids of a {@link DiseaseAnnotation}. The arguments are not modified; the
+ * results are new arrays.
+ * @author Peter Robinson
+ * @version 0.1 (26 May 2015)
+ */
+public final class SortedInts {
+
+    private SortedInts() {}
+
+    /** @return the union of two sorted arrays. */
+    public static int[] union(int[] a, int[] b) {
+	int[] c = new int[a.length+b.length];
+	int i=0, j=0, k=0;
+	while (i<a.length && j<b.length) {
+	    if (a[i]<b[j])
+		c[k++]=a[i++];
+	    else if (a[i]>b[j])
+		c[k++]=b[j++];
+	    else {
+		c[k++]=a[i++];
+		j++;
+	    }
+	}
+	while (i<a.length)
+	    c[k++]=a[i++];
+	while (j<b.length)
+	    c[k++]=b[j++];
+	return k==c.length ? c : java.util.Arrays.copyOf(c,k);
+    }
+
+    /** @return the intersection of two sorted arrays. */
+    public static int[] intersection(int[] a, int[] b) {
+	int[] c = new int[Math.min(a.length,b.length)];
+	int i=0, j=0, k=0;
+	while (i<a.length && j<b.length) {
+	    if (a[i]<b[j])
+		i++;
+	    else if (a[i]>b[j])
+		j++;
+	    else {
+		c[k++]=a[i++];
+		j++;
+	    }
+	}
+	return k==c.length ? c : java.util.Arrays.copyOf(c,k);
+    }
+
+    /** @return true if two sorted arrays have at least one element in common. */
+    public static boolean intersects(int[] a, int[] b) {
+	int i=0, j=0;
+	while (i<a.length && j<b.length) {
+	    if (a[i]==b[j])
+		return true;
+	    else if (a[i]<b[j])
+		i++;
+	    else
+		j++;
+	}
+	return false;
+    }
+}
@@ -0,0 +1,136 @@
+package hpoutil.omim;
+
+
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Map;
+
+import hpoutil.ontology.HPO;
+
+/**
+ * Inverted index from HPO terms to diseases. For every term, the index holds the
+ * sorted MIM ids of the diseases that are annotated to the term or to any of its
+ * descendants, with separate posting lists for positive annotations, NOT
+ * annotations, and annotations with neonatal or congenital onset (the latter
+ * include NOT annotations, as in {@link hpoutil.nosology.Definition}). Answering
+ * "which diseases have feature X" is then a lookup whose cost is proportional to the
+ * size of the result; the classification uses the index to restrict each category
+ * to the diseases that can possibly satisfy one of its definitions.
+ * @author Peter Robinson
+ * @version 0.1 (21 May 2015)
+ */
+public class TermDiseaseIndex {
+
+    private static final int[] NO_DISEASES = new int[0];
+
+    private final HPO hpo;
+    /** positive[i]: sorted MIM ids of the diseases with a positive annotation to term i or a descendant. */
+    private final int[][] positive;
+    /** negated[i]: sorted MIM ids of the diseases with a NOT annotation to term i or a descendant. */
+    private final int[][] negated;
+    /** neonatal[i]: sorted MIM ids of the diseases with a neonatal or congenital annotation to term i or a descendant. */
+    private final int[][] neonatal;
+    /** Number of diseases in the index. */
+    private final int diseaseCount;
+
+    /**
+     * @param hpo the ontology used to propagate the annotations to the ancestors
+     * @param diseasemap Key: MIM id, value: the (normalized) annotations of the disease
+     */
+    public TermDiseaseIndex(HPO hpo, Map<Integer,DiseaseAnnotation> diseasemap) {
+	this.hpo=hpo;
+	ArrayList<Integer> ids = new ArrayList<Integer>(diseasemap.keySet());
+	Collections.sort(ids);
+	this.diseaseCount=ids.size();
+	int n = hpo.getTermCount();
+	/* Propagate the annotations of each disease once. */
+	int[][] pos = new int[ids.size()][];
+	int[][] neg = new int[ids.size()][];
+	int[][] neo = new int[ids.size()][];
+	for (int d=0;d<ids.size();d++) {
+	    DiseaseAnnotation da = diseasemap.get(ids.get(d));
+	    pos[d] = da.getAnnotationProfile(hpo).getIndices();
+	    neg[d] = da.getNegatedIds().length==0 ? NO_DISEASES : hpo.getAncestorProfile(da.getNegatedIds()).getIndices();
+	    neo[d] = da.getNeonatalOrCongenitalIds().length==0 ? NO_DISEASES : hpo.getAncestorProfile(da.getNeonatalOrCongenitalIds()).getIndices();
+	}
+	this.positive = invert(ids,pos,n);
+	this.negated = invert(ids,neg,n);
+	this.neonatal = invert(ids,neo,n);
+    }
+
+    /**
+     * @param ids sorted MIM ids
+     * @param terms terms[d]: dense term indices of disease ids.get(d)
+     * @return for each term, the sorted MIM ids of the diseases that have the term
+     */
+    private static int[][] invert(ArrayList<Integer> ids, int[][] terms, int n) {
+	int[] count = new int[n];
+	for (int[] t : terms) {
+	    for (int i : t)
+		count[i]++;
+	}
+	int[][] postings = new int[n][];
+	for (int i=0;i<n;i++)
+	    postings[i] = count[i]==0 ? NO_DISEASES : new int[count[i]];
+	int[] pos = new int[n];
+	for (int d=0;d<terms.length;d++) {
+	    int mim = ids.get(d);
+	    for (int i : terms[d])
+		postings[i][pos[i]++] = mim;
+	}
+	return postings;
+    }
+
+    /** @return the ontology the index was built with. */
+    public HPO getHPO() { return this.hpo; }
+
+    /** @return number of diseases in the index. */
+    public int getDiseaseCount() { return this.diseaseCount; }
+
+    /**
+     * @param id Integer representation of an HP id
+     * @return sorted MIM ids of the diseases with a positive annotation to the term or one
+     * of its descendants (empty for unknown terms; the array must not be modified)
+     */
+    public int[] getPositive(int id) { return lookup(this.positive,id); }
+
+    /** @return sorted MIM ids of the diseases with a NOT annotation to the term or one of its descendants. */
+    public int[] getNegated(int id) { return lookup(this.negated,id); }
+
+    /** @return sorted MIM ids of the diseases with a neonatal or congenital annotation to the term or one of its descendants. */
+    public int[] getNeonatal(int id) { return lookup(this.neonatal,id); }
+
+    /** @return the positive posting list of the term with the given dense index. */
+    public int[] getPositiveAt(int index) { return this.positive[index]; }
+
+    /** @return the NOT posting list of the term with the given dense index. */
+    public int[] getNegatedAt(int index) { return this.negated[index]; }
+
+    /** @return the neonatal/congenital posting list of the term with the given dense index. */
+    public int[] getNeonatalAt(int index) { return this.neonatal[index]; }
+
+    private int[] lookup(int[][] postings, int id) {
+	int i = this.hpo.getIndex(id);
+	return i<0 ? NO_DISEASES : postings[i];
+    }
+
+    /** @return Estimate of the heap memory used by the posting lists in bytes. */
+    public long getMemoryUsage() {
+	long bytes=0L;
+	int[][][] all = { this.positive, this.negated, this.neonatal };
+	for (int[][] postings : all) {
+	    bytes += 16L + 8L*postings.length;
+	    for (int[] p : postings) {
+		if (p.length>0)
+		    bytes += 16L + 4L*p.length;
+	    }
+	}
+	return bytes;
+    }
+
+    public String toString() {
+	return String.format("TermDiseaseIndex: %d diseases, %d terms, %.1f MB",
+			     this.diseaseCount,this.positive.length,getMemoryUsage()/(1024.0*1024.0));
+    }
+}
@@ -0,0 +1,126 @@
+package hpoutil.ontology;
+
+
+import java.util.Arrays;
+import java.util.Set;
+
+/**
+ * One direction of the is_a graph (parents or children) over the dense term
+ * numbering, stored as compressed sparse rows that are cut into blocks of
+ * {@link #BLOCK_SIZE} consecutive terms. Block b is a single int array: entries
+ * 0..BLOCK_SIZE are offsets into the same array, and the neighbours of term
+ * i=b*BLOCK_SIZE+j are block[block[j]] .. block[block[j+1]-1]. A traversal
+ * therefore needs one more array load per term than with flat arrays.
+ * <p>
+ * Blocks are never modified after construction. Two releases of the HPO that
+ * number their common terms in the same way can thus share every block in which
+ * no term gained or lost a neighbour, see {@link OntologyStore}.
+ * @author Peter Robinson
+ * @version 0.1 (13 May 2015)
+ */
+final class Adjacency {
+    static final int SHIFT = 6;
+    static final int BLOCK_SIZE = 1 << SHIFT;
+    static final int MASK = BLOCK_SIZE-1;
+
+    private final int[][] blocks;
+    /** Number of terms. */
+    private final int size;
+    /** Number of links. */
+    private final int edges;
+
+    /**
+     * @param offsets the neighbours of term i are targets[offsets[i]] .. targets[offsets[i+1]-1]
+     * @param targets dense indices of the neighbours of all terms
+     */
+    Adjacency(int[] offsets, int[] targets) {
+	this(offsets,targets,null);
+    }
+
+    /**
+     * @param offsets the neighbours of term i are targets[offsets[i]] .. targets[offsets[i+1]-1]
+     * @param targets dense indices of the neighbours of all terms
+     * @param shared adjacency of another ontology with the same numbering of the common terms,
+     * whose blocks are reused if they are identical to the new ones (may be null)
+     */
+    Adjacency(int[] offsets, int[] targets, Adjacency shared) {
+	this.size = offsets.length-1;
+	this.edges = offsets[this.size]-offsets[0];
+	this.blocks = new int[(this.size+MASK)>>>SHIFT][];
+	for (int b=0;b<this.blocks.length;b++) {
+	    int first = b<<SHIFT;
+	    int last = Math.min(first+BLOCK_SIZE,this.size);
+	    int[] block = new int[BLOCK_SIZE+1+offsets[last]-offsets[first]];
+	    int e = BLOCK_SIZE+1;
+	    for (int j=0;j<=BLOCK_SIZE;j++) {
+		block[j] = e;
+		if (j<BLOCK_SIZE && first+j<last) {
+		    int len = offsets[first+j+1]-offsets[first+j];
+		    System.arraycopy(targets,offsets[first+j],block,e,len);
+		    e += len;
+		}
+	    }
+	    if (shared!=null && b<shared.blocks.length && Arrays.equals(block,shared.blocks[b]))
+		block = shared.blocks[b];
+	    this.blocks[b]=block;
+	}
+    }
+
+    /** @return the block that holds the neighbours of term i, see {@link #slot}. */
+    int[] block(int i) { return this.blocks[i>>>SHIFT]; }
+
+    /** @return position of term i in its block: its neighbours are block[block[j]] .. block[block[j+1]-1] for j=slot(i). */
+    static int slot(int i) { return i & MASK; }
+
+    /** @return dense indices of the neighbours of term i (a copy). */
+    int[] get(int i) {
+	int[] block = block(i);
+	int j = slot(i);
+	return Arrays.copyOfRange(block,block[j],block[j+1]);
+    }
+
+    /** @return number of terms. */
+    int size() { return this.size; }
+
+    /** @return number of links. */
+    int edgeCount() { return this.edges; }
+
+    /**
+     * @param shared adjacency whose blocks are reused if they are identical (may be null)
+     * @return the graph with all links reversed
+     */
+    Adjacency transpose(Adjacency shared) {
+	int[] toffsets = new int[this.size+1];
+	for (int i=0;i<this.size;i++) {
+	    int[] block = block(i);
+	    int j = slot(i);
+	    for (int k=block[j];k<block[j+1];k++)
+		toffsets[block[k]+1]++;
+	}
+	for (int i=0;i<this.size;i++)
+	    toffsets[i+1] += toffsets[i];
+	int[] ttargets = new int[this.edges];
+	int[] fill = Arrays.copyOf(toffsets,this.size);
+	for (int i=0;i<this.size;i++) {
+	    int[] block = block(i);
+	    int j = slot(i);
+	    for (int k=block[j];k<block[j+1];k++)
+		ttargets[fill[block[k]]++]=i;
+	}
+	return new Adjacency(toffsets,ttargets,shared);
+    }
+
+    /**
+     * @param counted blocks that were already counted (by identity); the blocks of this
+     * graph are added to it
+     * @return Estimate of the heap memory (in bytes) used by the blocks that were not counted yet
+     */
+    long getMemoryUsage(Set<Object> counted) {
+	long bytes = 16L + 8L*this.blocks.length;
+	for (int[] block : this.blocks) {
+	    if (counted.add(block))
+		bytes += 16L + 4L*block.length;
+	}
+	return bytes;
+    }
+}
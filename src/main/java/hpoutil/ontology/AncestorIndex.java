@@ -0,0 +1,122 @@
+package hpoutil.ontology;
+
+
+/**
+ * Precomputed transitive closure of the is_a relation. Terms are
+ * expected to be numbered densely (0..n-1) in topological order, i.e.,
+ * every parent has a smaller index than its children. Row i of the index
+ * is a bitset of all ancestors of term i (including i itself). Because an
+ * ancestor always has a smaller index than its descendants, row i only
+ * needs (i/64)+1 words, which halves the size of the index compared to a
+ * square bit matrix.
+ * @author Peter Robinson
+ * @version 0.1 (2 May 2015)
+ */
+public final class AncestorIndex {
+    /** Row i: bitset of the ancestors of the term with dense index i. */
+    private final long[][] rows;
+    /** Time needed to build the index in milliseconds; -1 if the rows were computed elsewhere. */
+    private final long buildTimeMillis;
+
+    /**
+     * @param parentOffsets the parents of term i are parentTargets[parentOffsets[i]] .. parentTargets[parentOffsets[i+1]-1]
+     * @param parentTargets dense indices of the parents of all terms.
+     * All parent indices of term i must be smaller than i (topological numbering).
+     */
+    public AncestorIndex(int[] parentOffsets, int[] parentTargets) {
+	this(new Adjacency(parentOffsets,parentTargets),null);
+    }
+
+    /**
+     * @param parents the parents of every term; all parent indices of term i must be smaller than i
+     * @param shared index of another ontology with the same numbering of the common terms,
+     * whose rows are reused if they are identical to the new ones (may be null)
+     */
+    AncestorIndex(Adjacency parents, AncestorIndex shared) {
+	long start = System.nanoTime();
+	int n = parents.size();
+	this.rows = new long[n][];
+	for (int i=0;i<n;i++) {
+	    long[] row = new long[(i>>>6)+1];
+	    row[i>>>6] |= 1L << i;
+	    int[] block = parents.block(i);
+	    int j = Adjacency.slot(i);
+	    for (int k=block[j];k<block[j+1];k++) {
+		int p = block[k];
+		if (p>=i) {
+		    throw new IllegalArgumentException("[AncestorIndex.java ERROR] terms not in topological order: parent " + p + " of " + i);
+		}
+		long[] prow = this.rows[p];
+		for (int w=0;w<prow.length;w++) {
+		    row[w] |= prow[w];
+		}
+	    }
+	    if (shared!=null && i<shared.rows.length && java.util.Arrays.equals(row,shared.rows[i]))
+		row = shared.rows[i];
+	    this.rows[i]=row;
+	}
+	this.buildTimeMillis = (System.nanoTime()-start)/1000000L;
+    }
+
+    /**
+     * Wrap rows that were computed earlier, e.g., rows loaded from a compiled snapshot of the ontology.
+     * @param rows row i is the ancestor bitset of term i and must have (i/64)+1 words
+     */
+    public AncestorIndex(long[][] rows) {
+	for (int i=0;i<rows.length;i++) {
+	    if (rows[i].length!=(i>>>6)+1)
+		throw new IllegalArgumentException("[AncestorIndex.java ERROR] bad length of row " + i);
+	}
+	this.rows=rows;
+	this.buildTimeMillis = -1L;
+    }
+
+    /**
+     * @return ancestor bitset of the term with dense index i (the array must not be modified).
+     */
+    public long[] getRow(int i) { return this.rows[i]; }
+
+    /**
+     * @param anc dense index of the putative ancestor
+     * @param desc dense index of the putative descendant
+     * @return true if anc is an ancestor of desc or if both are the same term.
+     */
+    public boolean isAncestor(int anc, int desc) {
+	if (anc>desc)
+	    return false; /* ancestors always have smaller indices */
+	return (rows[desc][anc>>>6] & (1L << anc)) != 0;
+    }
+
+    /** @return number of terms covered by the index. */
+    public int size() { return this.rows.length; }
+
+    /** @return time in milliseconds that was needed to build the index, or -1 if the rows were precomputed. */
+    public long getBuildTimeMillis() { return this.buildTimeMillis; }
+
+    /**
+     * @return Estimate of the heap memory used by the index in bytes
+     * (array headers are counted as 16 bytes, references as 8 bytes).
+     */
+    public long getMemoryUsage() {
+	return getMemoryUsage(java.util.Collections.newSetFromMap(new java.util.IdentityHashMap<Object,Boolean>()));
+    }
+
+    /**
+     * @param counted rows that were already counted (by identity); the rows of this index are added to it
+     * @return Estimate of the heap memory used by the rows that were not counted yet
+     */
+    long getMemoryUsage(java.util.Set<Object> counted) {
+	long bytes = 16L + 8L*rows.length;
+	for (long[] row : rows) {
+	    if (counted.add(row))
+		bytes += 16L + 8L*row.length;
+	}
+	return bytes;
+    }
+
+    public String toString() {
+	return String.format("AncestorIndex: %d terms, %.1f MB, %s",
+			     rows.length, getMemoryUsage()/(1024.0*1024.0),
+			     buildTimeMillis<0 ? "precomputed" : "built in " + buildTimeMillis + " ms");
+    }
+}
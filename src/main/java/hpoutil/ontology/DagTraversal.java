@@ -0,0 +1,203 @@
+package hpoutil.ontology;
+
+
+/**
+ * Depth-first traversal of the is_a graph that visits every term at most once.
+ * The HPO has a lot of multiple inheritance, and a walk without a visited set
+ * would push shared ancestors again and again. Here, the visited marker is an
+ * int array that is stamped with the number of the current query (epoch), so
+ * that it does not need to be cleared between queries, and the stack is
+ * reused. A query therefore does not allocate any memory and is bounded by the
+ * number of terms it reaches.
+ * <p>
+ * An instance keeps state between queries and must not be shared between
+ * threads; {@link HPO#getTraversal} returns one instance per thread.
+ * @author Peter Robinson
+ * @version 0.1 (4 May 2015)
+ */
+public final class DagTraversal {
+
+    /**
+     * Callback for the terms reached by a traversal.
+     */
+    public interface TermVisitor {
+	/**
+	 * @param index dense index of the term that is being visited
+	 * @return true to continue the traversal, false to stop it
+	 */
+	public boolean visit(int index);
+    }
+
+    /** is_a links from each term to its parents. */
+    private final Adjacency parents;
+    /** is_a links from each term to its children. */
+    private final Adjacency children;
+    /** Term i has been visited in the current query if mark[i]==epoch. */
+    private final int[] mark;
+    /** Stack of terms waiting to be expanded. */
+    private final int[] stack;
+    /** Number of the current query. */
+    private int epoch=0;
+
+    DagTraversal(Adjacency parents, Adjacency children) {
+	this.parents=parents;
+	this.children=children;
+	int n = parents.size();
+	this.mark=new int[n];
+	this.stack=new int[n];
+    }
+
+    /**
+     * Start a new query by incrementing the epoch. The marker array only
+     * needs to be cleared if the epoch counter wraps around.
+     */
+    private void nextEpoch() {
+	epoch++;
+	if (epoch==0) {
+	    java.util.Arrays.fill(mark,0);
+	    epoch=1;
+	}
+    }
+
+    /**
+     * Visit start and all of its ancestors, each exactly once.
+     * @return false if the visitor stopped the traversal early, otherwise true
+     */
+    public boolean visitAncestors(int start, TermVisitor visitor) {
+	return walk(start,this.parents,visitor);
+    }
+
+    /**
+     * Visit start and all of its descendants, each exactly once.
+     * @return false if the visitor stopped the traversal early, otherwise true
+     */
+    public boolean visitDescendants(int start, TermVisitor visitor) {
+	return walk(start,this.children,visitor);
+    }
+
+    private boolean walk(int start, Adjacency links, TermVisitor visitor) {
+	nextEpoch();
+	int sp=0;
+	stack[sp++]=start;
+	mark[start]=epoch;
+	while (sp>0) {
+	    int t = stack[--sp];
+	    if (! visitor.visit(t))
+		return false;
+	    int[] block = links.block(t);
+	    int j = Adjacency.slot(t);
+	    for (int k=block[j];k<block[j+1];k++) {
+		int n = block[k];
+		if (mark[n]!=epoch) {
+		    mark[n]=epoch;
+		    stack[sp++]=n;
+		}
+	    }
+	}
+	return true;
+    }
+
+    /**
+     * Walks up from desc and stops as soon as anc is found. Terms are numbered
+     * topologically, so branches that reach an index smaller than anc cannot
+     * lead to anc and are not expanded.
+     * @return true if anc is an ancestor of desc or if both are the same term.
+     */
+    public boolean isAncestor(int anc, int desc) {
+	if (anc==desc)
+	    return true;
+	if (anc>desc)
+	    return false;
+	nextEpoch();
+	int sp=0;
+	stack[sp++]=desc;
+	mark[desc]=epoch;
+	while (sp>0) {
+	    int t = stack[--sp];
+	    int[] block = this.parents.block(t);
+	    int j = Adjacency.slot(t);
+	    for (int k=block[j];k<block[j+1];k++) {
+		int p = block[k];
+		if (p==anc)
+		    return true;
+		if (p<anc || mark[p]==epoch)
+		    continue;
+		mark[p]=epoch;
+		stack[sp++]=p;
+	    }
+	}
+	return false;
+    }
+
+    /**
+     * Write start and all of its ancestors (dense indices, unsorted) to out.
+     * @param out buffer that must be large enough to hold all terms of the ontology
+     * @return number of indices written to out
+     */
+    public int collectAncestors(int start, int[] out) {
+	return collect(start,this.parents,out);
+    }
+
+    /**
+     * Write start and all of its descendants (dense indices, unsorted) to out.
+     * @param out buffer that must be large enough to hold all terms of the ontology
+     * @return number of indices written to out
+     */
+    public int collectDescendants(int start, int[] out) {
+	return collect(start,this.children,out);
+    }
+
+    /**
+     * Write the terms starts[0..count-1] and all of their ancestors to out. The starting
+     * terms share one visited marker, so every common ancestor is visited only once.
+     * @param out buffer that must be large enough to hold all terms of the ontology
+     * @return number of indices written to out
+     */
+    public int collectAncestors(int[] starts, int count, int[] out) {
+	nextEpoch();
+	int sp=0, n=0;
+	for (int i=0;i<count;i++) {
+	    int t = starts[i];
+	    if (mark[t]!=epoch) {
+		mark[t]=epoch;
+		stack[sp++]=t;
+	    }
+	}
+	while (sp>0) {
+	    int t = stack[--sp];
+	    out[n++]=t;
+	    int[] block = this.parents.block(t);
+	    int j = Adjacency.slot(t);
+	    for (int k=block[j];k<block[j+1];k++) {
+		int p = block[k];
+		if (mark[p]!=epoch) {
+		    mark[p]=epoch;
+		    stack[sp++]=p;
+		}
+	    }
+	}
+	return n;
+    }
+
+    private int collect(int start, Adjacency links, int[] out) {
+	nextEpoch();
+	int sp=0, n=0;
+	stack[sp++]=start;
+	mark[start]=epoch;
+	while (sp>0) {
+	    int t = stack[--sp];
+	    out[n++]=t;
+	    int[] block = links.block(t);
+	    int j = Adjacency.slot(t);
+	    for (int k=block[j];k<block[j+1];k++) {
+		int c = block[k];
+		if (mark[c]!=epoch) {
+		    mark[c]=epoch;
+		    stack[sp++]=c;
+		}
+	    }
+	}
+	return n;
+    }
+
+}
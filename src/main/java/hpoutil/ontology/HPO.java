@@ -3,7 +3,15 @@ package hpoutil.ontology;
 
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.log4j.Logger;
 
 /**
  * Represent the HPO ontology with the Terms and
@@ -13,8 +21,8 @@ import java.util.HashMap;
  */
 public class HPO {
 
+    private static Logger log = Logger.getLogger(HPO.class.getName());
 
-    private HashMap<Integer,Term> termmap=null;
 
     private Term phenoRoot=null;
 
@@ -22,15 +30,251 @@ public class HPO {
 
     private Term inheritanceRoot=null;
 
+    /** All terms of the ontology in topological order (parents before children). */
+    private Term[] terms=null;
+    /** Maps the integer representation of an HP id to the index of the term in {@link #terms}. */
+    private IdIndex termIndex=null;
+    /** Dense indices of the parents of all terms (compressed sparse rows in blocks). */
+    private Adjacency parents=null;
+    /** Dense indices of the children of all terms (compressed sparse rows in blocks). */
+    private Adjacency children=null;
+    /**
+     * Maps every known id (primary ids, alt_id's, and ids of obsolete terms) to the dense
+     * index of the current term, see {@link #resolveIndex}.
+     */
+    private IdIndex remap=null;
+    /** Transitive closure of the is_a links over the dense term numbering (may be null). */
+    private AncestorIndex ancestorIndex=null;
+    /**
+     * Release whose id tables this ontology overlays (see {@link #overlay}); the
+     * ontology itself if it has its own tables.
+     */
+    private HPO root=this;
+    /** Key: HP id of a term, value: the term and all of its descendants. */
+    private final HashMap<Integer,TermSet> descendantSets = new HashMap<Integer,TermSet>();
+    /** One traversal object per thread, because traversals keep their visited markers between queries. */
+    private final ThreadLocal<DagTraversal> traversal = new ThreadLocal<DagTraversal>() {
+	@Override protected DagTraversal initialValue() {
+	    return new DagTraversal(parents,children);
+	}
+    };
+
     public HPO(ArrayList<Term> tlist) {
+	this(tlist,true);
+    }
+
+    /**
+     * @param tlist List of all terms of the ontology
+     * @param buildAncestorIndex if true, precompute the transitive closure of the is_a links.
+     * Otherwise, {@link #isAncestorOf} walks the graph with a {@link DagTraversal}.
+     */
+    public HPO(ArrayList<Term> tlist, boolean buildAncestorIndex) {
 	calculateIsaAncestry(tlist);
+	calculateRemapTable();
+	identifyRootTerms();
+	if (buildAncestorIndex) {
+	    this.ancestorIndex = new AncestorIndex(this.parents,null);
+	    log.info(this.ancestorIndex.toString());
+	}
+    }
+
+    /**
+     * Create the ontology from a compiled representation, e.g., a snapshot that was
+     * written from the terms, parent links and closure index of another HPO object.
+     * @param terms all terms in topological order (parents before children)
+     * @param parentOffsets the parents of term i are parentTargets[parentOffsets[i]] .. parentTargets[parentOffsets[i+1]-1]
+     * @param parentTargets dense indices (positions in terms) of the parents of all terms
+     * @param ancestorIndex closure index for this numbering, or null
+     */
+    public HPO(Term[] terms, int[] parentOffsets, int[] parentTargets, AncestorIndex ancestorIndex) {
+	int n = terms.length;
+	if (parentOffsets.length!=n+1 || (ancestorIndex!=null && ancestorIndex.size()!=n))
+	    throw new IllegalArgumentException("[HPO.java ERROR] inconsistent compiled ontology");
+	for (int i=0;i<n;i++) {
+	    for (int k=parentOffsets[i];k<parentOffsets[i+1];k++) {
+		if (parentTargets[k]>=i)
+		    throw new IllegalArgumentException("[HPO.java ERROR] compiled terms are not in topological order");
+	    }
+	}
+	this.terms=terms;
+	this.termIndex=new IdIndex(n);
+	for (int i=0;i<n;i++)
+	    this.termIndex.put(terms[i].getID(),i);
+	this.parents = new Adjacency(parentOffsets,parentTargets);
+	this.children = this.parents.transpose(null);
+	this.ancestorIndex=ancestorIndex;
+	calculateRemapTable();
 	identifyRootTerms();
     }
 
+    private HPO() {
+    }
+
+    /**
+     * Create a later release of an ontology that keeps the dense numbering of the
+     * earlier one, so that the two releases can share most of their data: the terms of
+     * the earlier release keep their indices and the new terms are appended in
+     * topological order. The id tables of the new release are overlays of the tables of
+     * the earlier release (or of the release the earlier one overlays) that only hold the
+     * new and changed ids. The blocks of the adjacency arrays in which no term gained or
+     * lost a link and the rows of the closure index of terms whose ancestors did not
+     * change are shared, not copied.
+     * @param earlier the earlier release
+     * @param tlist all terms of the new release (as in {@link #HPO(ArrayList,boolean)},
+     * a later term replaces an earlier one with the same id)
+     * @param buildAncestorIndex if true, build the closure index
+     * @return the new release, or null if the numbering cannot be kept, i.e., if a term of
+     * the release the tables are shared with is missing, or if one of its terms has a
+     * new term as parent
+     */
+    static HPO overlay(HPO earlier, List<Term> tlist, boolean buildAncestorIndex) {
+	HPO root = earlier.root;
+	int nb = root.terms.length;
+	Term[] kept = new Term[nb];
+	LinkedHashMap<Integer,Term> added = new LinkedHashMap<Integer,Term>();
+	for (Term t : tlist) {
+	    int k = root.termIndex.get(t.getID());
+	    if (k>=0)
+		kept[k]=t;
+	    else
+		added.put(t.getID(),t);
+	}
+	for (int k=0;k<nb;k++) {
+	    if (kept[k]==null)
+		return null;
+	    for (int p : kept[k].getParentIdArray()) {
+		int i = root.termIndex.get(p);
+		if (i<0 || i>=k)
+		    return null;
+	    }
+	}
+	/* Kahn's algorithm for the new terms; their parents among the kept terms come first anyway. */
+	int m = added.size();
+	Term[] addedTerms = added.values().toArray(new Term[m]);
+	IdIndex addedIndex = new IdIndex(m);
+	for (int i=0;i<m;i++)
+	    addedIndex.put(addedTerms[i].getID(),i);
+	int[] remainingParents = new int[m];
+	ArrayList<ArrayList<Integer>> addedChildren = new ArrayList<ArrayList<Integer>>(m);
+	for (int i=0;i<m;i++)
+	    addedChildren.add(new ArrayList<Integer>());
+	for (int i=0;i<m;i++) {
+	    for (int p : addedTerms[i].getParentIdArray()) {
+		int a = addedIndex.get(p);
+		if (a>=0) {
+		    remainingParents[i]++;
+		    addedChildren.get(a).add(i);
+		} else if (root.termIndex.get(p)<0) {
+		    return null; /* unknown parent, reported by the ordinary constructor */
+		}
+	    }
+	}
+	int[] order = new int[m];
+	int head=0, tail=0;
+	for (int i=0;i<m;i++) {
+	    if (remainingParents[i]==0)
+		order[tail++]=i;
+	}
+	while (head<tail) {
+	    for (int c : addedChildren.get(order[head++])) {
+		if (--remainingParents[c]==0)
+		    order[tail++]=c;
+	    }
+	}
+	if (tail<m)
+	    return null; /* cycle, reported by the ordinary constructor */
+	int n = nb+m;
+	HPO hpo = new HPO();
+	hpo.root = root;
+	hpo.terms = java.util.Arrays.copyOf(kept,n);
+	hpo.termIndex = new IdIndex(m,root.termIndex);
+	for (int i=0;i<m;i++) {
+	    hpo.terms[nb+i] = addedTerms[order[i]];
+	    hpo.termIndex.put(hpo.terms[nb+i].getID(),nb+i);
+	}
+	int[] offsets = new int[n+1];
+	for (int i=0;i<n;i++)
+	    offsets[i+1] = offsets[i] + hpo.terms[i].getParentIdArray().length;
+	int[] targets = new int[offsets[n]];
+	for (int i=0;i<n;i++) {
+	    int[] pids = hpo.terms[i].getParentIdArray();
+	    for (int j=0;j<pids.length;j++)
+		targets[offsets[i]+j] = hpo.termIndex.get(pids[j]);
+	}
+	hpo.parents = new Adjacency(offsets,targets,earlier.parents);
+	hpo.children = hpo.parents.transpose(earlier.children);
+	hpo.calculateRemapTable();
+	hpo.remap = hpo.remapOverlay(root);
+	if (buildAncestorIndex)
+	    hpo.ancestorIndex = new AncestorIndex(hpo.parents,earlier.ancestorIndex);
+	hpo.identifyRootTerms();
+	return hpo;
+    }
+
+    /** @return true if this ontology was created by {@link #overlay} and shares the tables of an earlier release. */
+    boolean isOverlay() { return this.root!=this; }
+
+    /**
+     * @return an overlay of the remap table of root that maps every id exactly as the
+     * (complete) remap table of this ontology does
+     */
+    private IdIndex remapOverlay(HPO root) {
+	IdIndex full = this.remap;
+	ArrayList<Integer> keys = new ArrayList<Integer>();
+	for (Term t : this.terms) {
+	    if (full.get(t.getID())!=root.remap.get(t.getID()))
+		keys.add(t.getID());
+	    for (int alt : t.getAltIds()) {
+		if (full.get(alt)!=root.remap.get(alt))
+		    keys.add(alt);
+	    }
+	}
+	for (Term t : root.terms) {
+	    for (int alt : t.getAltIds()) {
+		if (full.get(alt)<0)
+		    keys.add(alt);
+	    }
+	}
+	IdIndex overlay = new IdIndex(keys.size(),root.remap);
+	for (int key : keys)
+	    overlay.put(key,full.get(key));
+	return overlay;
+    }
+
+    /**
+     * @param id Integer representation of an HP id (e.g., 1234 for HP:0001234)
+     * @return the corresponding term, or null if it is not in the ontology
+     */
+    public Term getTerm(Integer id) {
+	int i = this.termIndex.get(id);
+	return i<0 ? null : this.terms[i];
+    }
+
     public String getTermName(Integer i) {
-	Term t = this.termmap.get(i);
-	if (t==null) return "?";
-	else return t.getName();
+	int k = resolveIndex(i);
+	if (k<0) return "?";
+	else return this.terms[k].getName();
+    }
+
+    /**
+     * Map an id to the dense index of the current term. This never throws; use it to
+     * normalize ids from annotation files, which may be alt_id's or ids of obsolete terms.
+     * @param id Integer representation of an HP id, an alt_id, or the id of an obsolete term
+     * @return dense index of the term itself, of the term that has id as alt_id, or of the
+     * replacement of an obsolete term (obsolete terms without replaced_by map to themselves);
+     * -1 if the id is unknown
+     */
+    public int resolveIndex(int id) {
+	return this.remap.get(id);
+    }
+
+    /**
+     * @param id Integer representation of an HP id, an alt_id, or the id of an obsolete term
+     * @return Integer representation of the current HP id (see {@link #resolveIndex}), or -1 if the id is unknown
+     */
+    public int resolve(int id) {
+	int k = this.remap.get(id);
+	return k<0 ? -1 : this.terms[k].getID();
     }
 
 
@@ -41,21 +285,21 @@ public class HPO {
      * HP:0003674 (Onset)
      */
     private void identifyRootTerms() {
-	Term pheno = this.termmap.get(118);
+	Term pheno = getTerm(118);
 	if (pheno==null) {
 	    System.err.println("[HPO.java: ERROR] Could not identifiy phenotypic abnormality term");
 	    System.exit(1);
 	} else {
 	    this.phenoRoot=pheno;
 	}
-	Term onset = this.termmap.get(3674);
+	Term onset = getTerm(3674);
 	if (onset==null) {
 	    System.err.println("[HPO.java: ERROR] Could not identify ONSET term");
 	    System.exit(1);
 	} else {
 	    this.onsetRoot=pheno;
 	}
-	Term inherit = this.termmap.get(5);
+	Term inherit = getTerm(5);
 	if (inherit==null) {
 	    System.err.println("[HPO.java: ERROR] Could not identify INHERITANCE term");
 	    System.exit(1);
@@ -68,62 +312,425 @@ public class HPO {
 
     /**
      * Checks if HPO term t1 is the same as term t2 or if t2 is a descendent of t1.
+     * This is a constant-time lookup if the {@link AncestorIndex} was built,
+     * otherwise a traversal that visits each ancestor of t2 at most once.
      * @param t1 Integer representation of term 1 (e.g., 1234 for HP:0001234)
      * @param t2 Integer representation of term 2 (e.g., 1234 for HP:0001234)
      * @return true of t1 is an ancestor of t2 (or equal)
      */
     public boolean isAncestorOf(Integer t1, Integer t2) {
-	Term term1 = this.termmap.get(t1);
-	Term term2 = this.termmap.get(t2);
-	if (term1==null) {
+	int i1 = this.termIndex.get(t1);
+	int i2 = this.termIndex.get(t2);
+	if (i1<0) {
 	    throw new IllegalArgumentException("[HPO.java ERROR] could not find term for t1=" + t1);
 	}
-	if (term2==null) {
+	if (i2<0) {
 	    throw new IllegalArgumentException("[HPO.java ERROR] could not find term for t2=" + t2);
 	}
-	if (t1.equals(t2))
-	    return true;
-	java.util.Stack<Term> candidates = new java.util.Stack<Term>();
-	candidates.push(term2);
-	while (! candidates.empty() ) {
-	    Term t = candidates.pop();
-	    ArrayList<Term> parents = t.getParents();
-	    for (Term p : parents) {
-		if (p.equals(term1))
-		    return true;
-		if (p.equals(phenoRoot))
-		    continue; /* end of the ontology */
-		candidates.push(p);
+	if (this.ancestorIndex!=null)
+	    return this.ancestorIndex.isAncestor(i1,i2);
+	else
+	    return getTraversal().isAncestor(i1,i2);
+    }
+
+    /** @return the precomputed transitive closure of the is_a links (null if it was not built). */
+    public AncestorIndex getAncestorIndex() { return this.ancestorIndex; }
+
+    /** @return the traversal engine of the current thread. */
+    public DagTraversal getTraversal() { return this.traversal.get(); }
+
+    /**
+     * @param id Integer representation of an HP id (e.g., 1234 for HP:0001234)
+     * @return the dense index of the term, or -1 if the term is not in the ontology
+     */
+    public int getIndex(int id) {
+	return this.termIndex.get(id);
+    }
+
+    /** @return Integer representation of the HP id of the term with the given dense index. */
+    public Integer getIdAt(int index) { return this.terms[index].getID(); }
+
+    /** @return the term with the given dense index. */
+    public Term getTermAt(int index) { return this.terms[index]; }
+
+    /**
+     * @param id Integer representation of an HP id
+     * @return HP ids of the term and all of its ancestors, or an empty list if the term is unknown
+     */
+    public ArrayList<Integer> getAncestors(Integer id) {
+	return collect(id,true);
+    }
+
+    /**
+     * @param id Integer representation of an HP id
+     * @return HP ids of the term and all of its descendants, or an empty list if the term is unknown
+     */
+    public ArrayList<Integer> getDescendants(Integer id) {
+	return collect(id,false);
+    }
+
+    /**
+     * Expand a term into the set of itself and all of its descendants. The sets are
+     * built once per term and shared by all callers.
+     * @param id Integer representation of an HP id
+     * @return set of the term and all of its descendants (empty if the term is unknown)
+     */
+    public synchronized TermSet getDescendantSet(Integer id) {
+	TermSet set = this.descendantSets.get(id);
+	if (set==null) {
+	    int i = getIndex(id);
+	    int[] members;
+	    if (i<0) {
+		members = new int[0];
+	    } else {
+		int[] buffer = new int[this.terms.length];
+		int n = getTraversal().collectDescendants(i,buffer);
+		members = java.util.Arrays.copyOf(buffer,n);
+		java.util.Arrays.sort(members);
+	    }
+	    set = new TermSet(this,members);
+	    this.descendantSets.put(id,set);
+	}
+	return set;
+    }
+
+    /**
+     * @param indices dense term indices in any order; duplicates and negative values (unknown terms) are ignored
+     * @return the set of these terms, e.g., a mask of the terms used by a rule
+     */
+    public TermSet getTermSet(int[] indices) {
+	int[] a = indices.clone();
+	java.util.Arrays.sort(a);
+	int n=0;
+	for (int i=0;i<a.length;i++) {
+	    if (a[i]>=0 && (n==0 || a[n-1]!=a[i]))
+		a[n++]=a[i];
+	}
+	return new TermSet(this,java.util.Arrays.copyOf(a,n));
+    }
+
+    /**
+     * Compute the union of the ancestors of a set of terms (including the terms themselves)
+     * in a single traversal. For the positive annotations of a disease, the result contains
+     * every term the disease has a feature of, so that "does the disease have a descendant
+     * of X" becomes a lookup of X in the profile.
+     * @param ids Integer representations of HP ids; unknown ids are ignored
+     * @return the propagated profile
+     */
+    public TermSet getAncestorProfile(List<Integer> ids) {
+	int[] a = new int[ids.size()];
+	int k=0;
+	for (Integer id : ids)
+	    a[k++]=id;
+	return getAncestorProfile(a);
+    }
+
+    /**
+     * @param ids Integer representations of HP ids; unknown ids are ignored
+     * @return the propagated profile, see {@link #getAncestorProfile(List)}
+     */
+    public TermSet getAncestorProfile(int[] ids) {
+	int[] starts = new int[ids.length];
+	int count=0;
+	for (int id : ids) {
+	    int i = this.termIndex.get(id);
+	    if (i>=0)
+		starts[count++]=i;
+	}
+	int[] buffer = new int[this.terms.length];
+	int n = getTraversal().collectAncestors(starts,count,buffer);
+	int[] members = java.util.Arrays.copyOf(buffer,n);
+	java.util.Arrays.sort(members);
+	return new TermSet(this,members);
+    }
+
+    /**
+     * Build a reduced ontology that contains only the part of the HPO that is needed to
+     * evaluate rules over the given terms: the rule terms and all of their ancestors, plus
+     * those descendants of rule terms that are ancestors of (or equal to) an annotation term.
+     * For any annotation term a and rule term r, a is a descendant of r in the slice exactly
+     * if it is in the full ontology. The root terms for phenotypic abnormality, onset and
+     * mode of inheritance are always kept. The terms are renumbered densely, and the closure
+     * index is rebuilt for the slice if this ontology has one.
+     * @param ruleTerms Integer representations of the HP ids used in rules
+     * @param annotationTerms Integer representations of the HP ids used in annotations,
+     * or null to keep all descendants of the rule terms
+     * @return the sliced ontology
+     */
+    public HPO slice(Collection<Integer> ruleTerms, Collection<Integer> annotationTerms) {
+	int n = this.terms.length;
+	DagTraversal trav = getTraversal();
+	int[] buffer = new int[n];
+	int[] starts = new int[ruleTerms.size()+3];
+	int count=0;
+	for (Integer id : ruleTerms) {
+	    int i = resolveIndex(id);
+	    if (i>=0)
+		starts[count++]=i;
+	}
+	int nrule=count;
+	int[] roots = { 118, 3674, 5 };
+	for (int r : roots) {
+	    if (hasTerm(r))
+		starts[count++]=getIndex(r);
+	}
+	boolean[] keep = new boolean[n];
+	int m = trav.collectAncestors(starts,count,buffer);
+	for (int k=0;k<m;k++)
+	    keep[buffer[k]]=true;
+	boolean[] belowRule = new boolean[n];
+	for (int r=0;r<nrule;r++) {
+	    m = trav.collectDescendants(starts[r],buffer);
+	    for (int k=0;k<m;k++)
+		belowRule[buffer[k]]=true;
+	}
+	if (annotationTerms==null) {
+	    for (int i=0;i<n;i++)
+		keep[i] |= belowRule[i];
+	} else {
+	    int[] annot = new int[annotationTerms.size()];
+	    int na=0;
+	    for (Integer id : annotationTerms) {
+		int i = resolveIndex(id);
+		if (i>=0 && belowRule[i])
+		    annot[na++]=i;
 	    }
+	    m = trav.collectAncestors(annot,na,buffer);
+	    for (int k=0;k<m;k++) {
+		if (belowRule[buffer[k]])
+		    keep[buffer[k]]=true;
+	    }
+	}
+	/* Renumber the kept terms, preserving the topological order. */
+	int[] newIndex = new int[n];
+	int nkept=0;
+	for (int i=0;i<n;i++)
+	    newIndex[i] = keep[i] ? nkept++ : -1;
+	Term[] sliced = new Term[nkept];
+	int[] offsets = new int[nkept+1];
+	int[] targets = new int[this.parents.edgeCount()];
+	int e=0;
+	for (int i=0;i<n;i++) {
+	    if (!keep[i])
+		continue;
+	    int j = newIndex[i];
+	    int first = e;
+	    int[] block = this.parents.block(i);
+	    int s = Adjacency.slot(i);
+	    for (int k=block[s];k<block[s+1];k++) {
+		int p = newIndex[block[k]];
+		if (p>=0)
+		    targets[e++]=p;
+	    }
+	    offsets[j+1]=e;
+	    int[] isa = new int[e-first];
+	    Term t = this.terms[i];
+	    for (int k=first;k<e;k++)
+		isa[k-first] = sliced[targets[k]].getID();
+	    sliced[j] = new Term(t.getName(),t.getID(),isa,t.getAltIds(),t.isObsolete(),t.getReplacedBy(),t.getSynonyms());
 	}
-	return false;
+	targets = java.util.Arrays.copyOf(targets,e);
+	AncestorIndex ai = this.ancestorIndex==null ? null : new AncestorIndex(offsets,targets);
+	log.info(String.format("Sliced HPO to %d of %d terms",nkept,n));
+	return new HPO(sliced,offsets,targets,ai);
     }
 
+    /** @return true if the HP id (e.g., 1234 for HP:0001234) belongs to a term of this ontology. */
+    public boolean hasTerm(Integer id) { return this.termIndex.get(id)>=0; }
 
+    private ArrayList<Integer> collect(Integer id, boolean up) {
+	ArrayList<Integer> lst = new ArrayList<Integer>();
+	int i = getIndex(id);
+	if (i<0)
+	    return lst;
+	int[] buffer = new int[this.terms.length];
+	int n = up ? getTraversal().collectAncestors(i,buffer) : getTraversal().collectDescendants(i,buffer);
+	for (int k=0;k<n;k++)
+	    lst.add(this.terms[buffer[k]].getID());
+	return lst;
+    }
 
+    /** @return number of terms in the ontology. */
+    public int getTermCount() { return this.terms.length; }
 
 
+    /**
+     * @param t a term of this ontology
+     * @return the parents of the term in this ontology (empty if the term is not in it)
+     */
+    public ArrayList<Term> getParents(Term t) {
+	return toTerms(t,this.parents);
+    }
+
+    /**
+     * @param t a term of this ontology
+     * @return the children of the term in this ontology (empty if the term is not in it)
+     */
+    public ArrayList<Term> getChildren(Term t) {
+	return toTerms(t,this.children);
+    }
+
+    private ArrayList<Term> toTerms(Term t, Adjacency links) {
+	int i = getIndex(t.getID());
+	if (i<0)
+	    return new ArrayList<Term>();
+	int[] indices = links.get(i);
+	ArrayList<Term> lst = new ArrayList<Term>(indices.length);
+	for (int k : indices)
+	    lst.add(this.terms[k]);
+	return lst;
+    }
+
+    /**
+     * @return Estimate of the heap memory (in bytes) used by the dense graph representation
+     * (id tables and adjacency arrays, but not the Term objects or the closure index).
+     */
+    public long getGraphMemoryUsage() {
+	return getGraphMemoryUsage(Collections.newSetFromMap(new IdentityHashMap<Object,Boolean>()));
+    }
+
+    /**
+     * @param counted tables and blocks that were already counted (by identity), e.g., because
+     * they are shared with another release; the data of this ontology is added to it
+     * @return Estimate of the heap memory (in bytes) used by the parts of the graph
+     * representation that were not counted yet
+     */
+    long getGraphMemoryUsage(Set<Object> counted) {
+	return 64L + this.termIndex.getMemoryUsage(counted) + this.remap.getMemoryUsage(counted)
+	    + this.parents.getMemoryUsage(counted) + this.children.getMemoryUsage(counted);
+    }
+
+
+    /**
+     * Number the terms densely in topological order (Kahn's algorithm), so that each
+     * parent has a smaller index than all of its children, and store the is_a links as
+     * compressed sparse rows of dense indices in both directions.
+     */
     private void calculateIsaAncestry(ArrayList<Term> tlist){
-	this.termmap = new HashMap<Integer,Term>();
+	/* Provisional numbering in input order; a later term with the same id replaces an earlier one. */
+	IdIndex inputIndex = new IdIndex(tlist.size());
+	ArrayList<Term> unique = new ArrayList<Term>(tlist.size());
 	for (Term t: tlist)  {
-	    Integer id = t.getID();
-	    this.termmap.put(id,t);
-	}
-	for (Term t: tlist) {
-	    Integer id = t.getID();
-	    ArrayList<Integer> parentIDlist = t.getParentIDs();
-	    for (Integer p : parentIDlist) {
-		Term parent = this.termmap.get(p);
-		if (parent==null) {
-		    System.err.println("Error, could not find term for parent id: " + p);
+	    int k = inputIndex.get(t.getID());
+	    if (k<0) {
+		inputIndex.put(t.getID(),unique.size());
+		unique.add(t);
+	    } else {
+		unique.set(k,t);
+	    }
+	}
+	int n = unique.size();
+	int[] inParentOffsets = new int[n+1];
+	for (int i=0;i<n;i++)
+	    inParentOffsets[i+1] = inParentOffsets[i] + unique.get(i).getParentIdArray().length;
+	int[] inParentTargets = new int[inParentOffsets[n]];
+	for (int i=0;i<n;i++) {
+	    int[] pids = unique.get(i).getParentIdArray();
+	    for (int j=0;j<pids.length;j++) {
+		int p = inputIndex.get(pids[j]);
+		if (p<0) {
+		    System.err.println("Error, could not find term for parent id: " + pids[j]);
 		    System.exit(1);
 		}
-		t.addIsAReference(parent);
-		parent.addChildReference(t);
+		inParentTargets[inParentOffsets[i]+j]=p;
 	    }
 	}
+	int[][] inChildren = transpose(inParentOffsets,inParentTargets,n);
+	int[] inChildOffsets = inChildren[0];
+	int[] inChildTargets = inChildren[1];
+	/* Kahn's algorithm */
+	int[] order = new int[n];
+	int[] remainingParents = new int[n];
+	int head=0, tail=0;
+	for (int i=0;i<n;i++) {
+	    remainingParents[i] = inParentOffsets[i+1]-inParentOffsets[i];
+	    if (remainingParents[i]==0)
+		order[tail++]=i;
+	}
+	while (head<tail) {
+	    int t = order[head++];
+	    for (int k=inChildOffsets[t];k<inChildOffsets[t+1];k++) {
+		int c = inChildTargets[k];
+		if (--remainingParents[c]==0)
+		    order[tail++]=c;
+	    }
+	}
+	if (tail<n) {
+	    System.err.println("[HPO.java: ERROR] is_a links contain a cycle, " + (n-tail) + " terms could not be ordered");
+	    System.exit(1);
+	}
+	/* Final dense numbering */
+	int[] rank = new int[n];
+	this.terms = new Term[n];
+	this.termIndex = new IdIndex(n);
+	for (int i=0;i<n;i++) {
+	    rank[order[i]]=i;
+	    Term t = unique.get(order[i]);
+	    this.terms[i]=t;
+	    this.termIndex.put(t.getID(),i);
+	}
+	int[] parentOffsets = new int[n+1];
+	int[] parentTargets = new int[inParentTargets.length];
+	for (int i=0;i<n;i++) {
+	    int o = order[i];
+	    int len = inParentOffsets[o+1]-inParentOffsets[o];
+	    parentOffsets[i+1] = parentOffsets[i]+len;
+	    for (int k=0;k<len;k++)
+		parentTargets[parentOffsets[i]+k] = rank[inParentTargets[inParentOffsets[o]+k]];
+	}
+	this.parents = new Adjacency(parentOffsets,parentTargets);
+	this.children = this.parents.transpose(null);
+    }
 
+    /**
+     * Build the table that maps alt_id's and ids of obsolete terms to current terms.
+     * Chains of replaced_by links are followed (at most 16 steps, to guard against cycles).
+     */
+    private void calculateRemapTable() {
+	int n = this.terms.length;
+	int count = n;
+	for (Term t : this.terms)
+	    count += t.getAltIds().length;
+	this.remap = new IdIndex(count);
+	for (int i=0;i<n;i++)
+	    this.remap.put(this.terms[i].getID(),i);
+	for (int i=0;i<n;i++) {
+	    for (int alt : this.terms[i].getAltIds()) {
+		if (this.termIndex.get(alt)<0)
+		    this.remap.put(alt,i);
+	    }
+	}
+	for (int i=0;i<n;i++) {
+	    Term t = this.terms[i];
+	    int k = i;
+	    for (int step=0; step<16 && this.terms[k].isObsolete() && this.terms[k].getReplacedBy()>=0; step++) {
+		int r = this.remap.get(this.terms[k].getReplacedBy());
+		if (r<0 || r==k)
+		    break;
+		k = r;
+	    }
+	    if (k!=i)
+		this.remap.put(t.getID(),k);
+	}
+    }
 
+    /**
+     * Reverse the direction of a graph that is stored as compressed sparse rows.
+     * @return the offsets (element 0) and targets (element 1) of the reversed graph
+     */
+    private static int[][] transpose(int[] offsets, int[] targets, int n) {
+	int[] toffsets = new int[n+1];
+	for (int t : targets)
+	    toffsets[t+1]++;
+	for (int i=0;i<n;i++)
+	    toffsets[i+1] += toffsets[i];
+	int[] ttargets = new int[targets.length];
+	int[] fill = java.util.Arrays.copyOf(toffsets,n);
+	for (int i=0;i<n;i++) {
+	    for (int k=offsets[i];k<offsets[i+1];k++)
+		ttargets[fill[targets[k]]++]=i;
+	}
+	return new int[][]{toffsets,ttargets};
     }
 
 
@@ -0,0 +1,99 @@
+package hpoutil.ontology;
+
+
+/**
+ * Maps the integer representation of HP ids (e.g., 1234 for HP:0001234) to the
+ * dense index of the term. This is an open-addressing hash table with linear
+ * probing over two int arrays, so that lookups do not box the key and do not
+ * need to follow any pointers.
+ * <p>
+ * A table can be an overlay of a base table: keys that are not in the overlay
+ * are looked up in the base, and an entry with the value -1 hides the key of
+ * the base. {@link OntologyStore} uses this to share the id tables of a release
+ * with later releases, which only store their new and changed ids.
+ * @author Peter Robinson
+ * @version 0.1 (6 May 2015)
+ */
+final class IdIndex {
+    /** Marks an empty slot; HP ids are never negative. */
+    private static final int EMPTY = -1;
+
+    private final int[] keys;
+    private final int[] values;
+    private final int mask;
+    private int size=0;
+    /** Table that is consulted for keys that are not in this one (may be null). */
+    private final IdIndex base;
+
+    /**
+     * @param expected expected number of entries; the table is kept at most half full.
+     */
+    IdIndex(int expected) {
+	this(expected,null);
+    }
+
+    /**
+     * @param expected expected number of entries of the overlay
+     * @param base table that is consulted for keys that are not in the overlay (may be null)
+     */
+    IdIndex(int expected, IdIndex base) {
+	this.base=base;
+	int cap = 2;
+	while (cap < 2*expected)
+	    cap <<= 1;
+	this.keys = new int[cap];
+	this.values = new int[cap];
+	this.mask = cap-1;
+	java.util.Arrays.fill(this.keys,EMPTY);
+    }
+
+    private int slot(int key) {
+	int h = key * 0x9E3779B9;
+	return (h ^ (h>>>16)) & mask;
+    }
+
+    /**
+     * Adds or replaces an entry. The table does not grow, and the caller must not
+     * add more entries than were announced in the constructor.
+     */
+    void put(int key, int value) {
+	int i = slot(key);
+	while (keys[i]!=EMPTY && keys[i]!=key)
+	    i = (i+1) & mask;
+	if (keys[i]==EMPTY)
+	    size++;
+	keys[i]=key;
+	values[i]=value;
+    }
+
+    /** @return the index stored for key (in the overlay or else in the base table), or -1 if there is none. */
+    int get(int key) {
+	int i = slot(key);
+	while (keys[i]!=EMPTY) {
+	    if (keys[i]==key)
+		return values[i];
+	    i = (i+1) & mask;
+	}
+	return this.base==null ? -1 : this.base.get(key);
+    }
+
+    /** @return number of entries of this table, not counting the base table. */
+    int size() { return this.size; }
+
+    /** @return the base table of an overlay, or null. */
+    IdIndex getBase() { return this.base; }
+
+    /** @return estimate of the heap memory used by the table in bytes. */
+    long getMemoryUsage() { return 32L + 8L*keys.length; }
+
+    /**
+     * @param counted tables that were already counted (by identity); this table and its base are added to it
+     * @return estimate of the heap memory used by this table and its base, unless they were counted already
+     */
+    long getMemoryUsage(java.util.Set<Object> counted) {
+	long bytes = counted.add(this) ? getMemoryUsage() : 0L;
+	if (this.base!=null)
+	    bytes += this.base.getMemoryUsage(counted);
+	return bytes;
+    }
+}
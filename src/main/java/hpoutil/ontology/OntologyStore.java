@@ -0,0 +1,226 @@
+package hpoutil.ontology;
+
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Holds several releases of the HPO in one process. Each release is added
+ * with a version label and is available as an ordinary {@link HPO} object, which
+ * can be passed to {@link hpoutil.nosology.DiseaseCategory#setHPO} and
+ * {@link hpoutil.nosology.Definition#setHPO} to evaluate the nosology against
+ * that release.
+ * <p>
+ * The term data of all releases is interned: names, synonyms, the arrays of
+ * parent ids and alt_id's, and the {@link Term} objects themselves are stored
+ * once and shared by all releases in which they are identical, so an unchanged
+ * term costs a release only one reference.
+ * <p>
+ * The first release is a base with its own graph. A later release keeps the dense
+ * numbering of the base and appends its new terms (see {@link HPO#overlay}): its id
+ * tables are overlays of the tables of the base that only hold new and changed ids,
+ * and it shares with the previous release every block of the adjacency arrays in
+ * which no term gained or lost an is_a link, and the closure rows of all terms whose
+ * ancestors did not change. If the numbering cannot be kept (a term of the base is
+ * missing or got a new term as parent), the release becomes a new base. The closure
+ * index is not built by default, and {@link HPO#isAncestorOf} uses a graph traversal.
+ * @author Peter Robinson
+ * @version 0.1 (13 May 2015)
+ */
+public class OntologyStore {
+
+    private static Logger log = Logger.getLogger(OntologyStore.class.getName());
+
+    /** Key: version label, value: ontology of that release (in the order the releases were added). */
+    private final LinkedHashMap<String,HPO> releases = new LinkedHashMap<String,HPO>();
+    /** Key: version label, value: number of terms whose data was not shared with an earlier release. */
+    private final HashMap<String,Integer> changedTerms = new HashMap<String,Integer>();
+    private final HashMap<String,String> stringPool = new HashMap<String,String>();
+    private final HashMap<ArrayKey,int[]> idArrayPool = new HashMap<ArrayKey,int[]>();
+    private final HashMap<ArrayKey,String[]> synonymPool = new HashMap<ArrayKey,String[]>();
+    private final HashMap<ArrayKey,Term> termPool = new HashMap<ArrayKey,Term>();
+    /** If true, build an {@link AncestorIndex} for every release. */
+    private final boolean buildAncestorIndex;
+    /** Number of pool entries that were created while the current release was added. */
+    private int created;
+
+    public OntologyStore() {
+	this(false);
+    }
+
+    /**
+     * @param buildAncestorIndex if true, build the closure index for every release
+     * (fast subsumption checks, but the index is not shared between releases).
+     */
+    public OntologyStore(boolean buildAncestorIndex) {
+	this.buildAncestorIndex=buildAncestorIndex;
+    }
+
+    /**
+     * Add a release of the HPO. The terms are copied, so that the list (e.g., the term
+     * list of the OBO parser) can be discarded afterwards.
+     * @param version label of the release, e.g., the data-version of the OBO file
+     * @param tlist all terms of the release
+     * @return the ontology of the release
+     */
+    public synchronized HPO addRelease(String version, List<Term> tlist) {
+	if (this.releases.containsKey(version)) {
+	    throw new IllegalArgumentException("[OntologyStore.java ERROR] duplicate version: " + version);
+	}
+	ArrayList<Term> interned = new ArrayList<Term>(tlist.size());
+	int changed=0;
+	for (Term t : tlist) {
+	    this.created=0;
+	    interned.add(internTerm(t));
+	    if (this.created>0)
+		changed++;
+	}
+	HPO hpo=null;
+	String previous=null;
+	if (! this.releases.isEmpty()) {
+	    List<String> versions = getVersions();
+	    previous = versions.get(versions.size()-1);
+	    hpo = HPO.overlay(this.releases.get(previous),interned,this.buildAncestorIndex);
+	}
+	if (hpo==null)
+	    hpo = new HPO(interned,this.buildAncestorIndex);
+	this.releases.put(version,hpo);
+	this.changedTerms.put(version,changed);
+	log.info(String.format("Added HPO release %s: %d terms, %d with new data, %s",version,interned.size(),changed,
+			       hpo.isOverlay() ? "overlay sharing the graph of " + previous : "new base graph"));
+	return hpo;
+    }
+
+    /** @return the pooled copy of the term (the caller's term is neither modified nor kept). */
+    private Term internTerm(Term t) {
+	String name = internString(t.getName());
+	int[] isa = internIds(t.getParentIdArray());
+	int[] altIds = internIds(t.getAltIds());
+	String[] synonyms = internSynonyms(t.getSynonyms());
+	/* The strings and arrays are pooled, so equal contents have the same references. */
+	ArrayKey key = new ArrayKey(new Object[]{t.getID(),name,isa,altIds,t.isObsolete(),t.getReplacedBy(),synonyms});
+	Term old = this.termPool.get(key);
+	if (old!=null)
+	    return old;
+	Term copy = new Term(name,t.getID(),isa,altIds,t.isObsolete(),t.getReplacedBy(),synonyms);
+	this.termPool.put(key,copy);
+	this.created++;
+	return copy;
+    }
+
+    /** @return the ontology of the release, or null if there is no release with this label. */
+    public HPO getRelease(String version) { return this.releases.get(version); }
+
+    /** @return the version labels in the order the releases were added. */
+    public List<String> getVersions() { return new ArrayList<String>(this.releases.keySet()); }
+
+    /** @return number of terms of the release whose data was not shared with an earlier release. */
+    public int getChangedTermCount(String version) {
+	Integer c = this.changedTerms.get(version);
+	return c==null ? 0 : c;
+    }
+
+    private String internString(String s) {
+	String old = this.stringPool.get(s);
+	if (old!=null)
+	    return old;
+	this.stringPool.put(s,s);
+	this.created++;
+	return s;
+    }
+
+    /** @return the pooled copy of the array (the caller's array is neither modified nor kept). */
+    private int[] internIds(int[] a) {
+	int[] old = this.idArrayPool.get(new ArrayKey(a));
+	if (old!=null)
+	    return old;
+	int[] copy = a.clone();
+	this.idArrayPool.put(new ArrayKey(copy),copy);
+	this.created++;
+	return copy;
+    }
+
+    /** @return the pooled copy of the array, with interned strings (the caller's array is neither modified nor kept). */
+    private String[] internSynonyms(String[] a) {
+	String[] old = this.synonymPool.get(new ArrayKey(a));
+	if (old!=null)
+	    return old;
+	String[] copy = a.clone();
+	for (int i=0;i<copy.length;i++)
+	    copy[i] = internString(copy[i]);
+	this.synonymPool.put(new ArrayKey(copy),copy);
+	this.created++;
+	return copy;
+    }
+
+    /**
+     * @return Estimate of the heap memory (in bytes) used by the shared term data
+     * (strings are counted with 40 bytes overhead and two bytes per character, Term objects with 48 bytes).
+     */
+    public long getSharedMemoryUsage() {
+	long bytes=0L;
+	for (String s : this.stringPool.keySet())
+	    bytes += 40L + 2L*s.length();
+	for (int[] a : this.idArrayPool.values())
+	    bytes += 16L + 4L*a.length;
+	for (String[] a : this.synonymPool.values())
+	    bytes += 16L + 8L*a.length;
+	bytes += 48L*this.termPool.size();
+	return bytes;
+    }
+
+    /**
+     * @return Estimate of the heap memory (in bytes) used by the releases on top of the
+     * shared term data (term arrays, id tables, adjacency arrays and closure index; tables,
+     * blocks and closure rows that are shared by several releases are counted once).
+     */
+    public long getReleaseMemoryUsage() {
+	long bytes=0L;
+	Set<Object> counted = Collections.newSetFromMap(new IdentityHashMap<Object,Boolean>());
+	for (HPO hpo : this.releases.values()) {
+	    bytes += 16L + 8L*hpo.getTermCount();
+	    bytes += hpo.getGraphMemoryUsage(counted);
+	    if (hpo.getAncestorIndex()!=null)
+		bytes += hpo.getAncestorIndex().getMemoryUsage(counted);
+	}
+	return bytes;
+    }
+
+    /** Content-based hash key for int[] and String[] arrays. */
+    private static final class ArrayKey {
+	private final int[] ints;
+	private final Object[] objects;
+	private final int hash;
+
+	ArrayKey(int[] a) {
+	    this.ints=a;
+	    this.objects=null;
+	    this.hash=Arrays.hashCode(a);
+	}
+
+	ArrayKey(Object[] a) {
+	    this.ints=null;
+	    this.objects=a;
+	    this.hash=Arrays.hashCode(a);
+	}
+
+	@Override public int hashCode() { return this.hash; }
+
+	@Override public boolean equals(Object o) {
+	    if (!(o instanceof ArrayKey))
+		return false;
+	    ArrayKey k = (ArrayKey)o;
+	    if (this.ints!=null)
+		return Arrays.equals(this.ints,k.ints);
+	    return Arrays.equals(this.objects,k.objects);
+	}
+    }
+}
@@ -4,51 +4,112 @@ package hpoutil.ontology;
 import java.util.ArrayList;
 
 
+/**
+ * A single HPO term. The is_a links are stored by the {@link HPO} object as
+ * arrays of dense term indices; use {@link HPO#getParents} and {@link HPO#getChildren}
+ * to navigate them. A term does not refer to its ontology, so the same Term object
+ * can belong to several releases of the HPO (see {@link OntologyStore}).
+ */
 public class Term {
 
     private String name=null;
-    private Integer id;
-    private ArrayList<Integer> isa;
-
-    private ArrayList<Term> parentList=new ArrayList<Term>();
-
-    private ArrayList<Term> childList=new ArrayList<Term>();
+    private int id;
+    /** Integer representation of the parent HP ids, as given by the is_a lines. */
+    private int[] isa;
+    /** Integer representation of the alt_id's of this term (empty if none). */
+    private int[] altIds=NO_IDS;
+    /** Was the term marked with is_obsolete: true? */
+    private boolean obsolete=false;
+    /** Integer representation of the replaced_by id of an obsolete term, -1 if none. */
+    private int replacedBy=-1;
+    /** Synonyms of the term, as given by the synonym lines (empty if none). */
+    private String[] synonyms=NO_SYNONYMS;
+
+    private static final int[] NO_IDS = new int[0];
+    private static final String[] NO_SYNONYMS = new String[0];
 
     public Term(String current_name, String current_id, ArrayList<String> current_isa) {
 	this.id = parseHpoID(current_id);
 	this.name=current_name;
-	isa=new ArrayList<Integer>();
+	isa=new int[current_isa.size()];
+	int k=0;
 	for (String s:current_isa) {
 	    // The "is_a" String may have the form
 	    // HP:0011628 ! Congenital defect of the pericardium
 	    int i = s.indexOf("!");
 	    if (i>0)
 		s=s.substring(0,i);
-	    Integer id = parseHpoID(s);
-	    isa.add(id);
+	    isa[k++] = parseHpoID(s);
 	}
 	//System.out.println(toString());
     }
 
-    public boolean equals(Term other) { return this.id.equals(other.id); }
+    /**
+     * @param name name of the term
+     * @param id Integer representation of the HP id, e.g., 1234 for HP:0001234
+     * @param isa Integer representation of the parent HP ids
+     */
+    public Term(String name, int id, int[] isa) {
+	this.name=name;
+	this.id=id;
+	this.isa=isa;
+    }
+
+    /**
+     * @param name name of the term
+     * @param id Integer representation of the HP id, e.g., 1234 for HP:0001234
+     * @param isa Integer representation of the parent HP ids
+     * @param altIds Integer representation of the alt_id's of the term
+     * @param obsolete true if the term is obsolete
+     * @param replacedBy Integer representation of the replaced_by id, or -1
+     */
+    public Term(String name, int id, int[] isa, int[] altIds, boolean obsolete, int replacedBy) {
+	this(name,id,isa);
+	this.altIds=altIds;
+	this.obsolete=obsolete;
+	this.replacedBy=replacedBy;
+    }
+
+    /**
+     * @param name name of the term
+     * @param id Integer representation of the HP id, e.g., 1234 for HP:0001234
+     * @param isa Integer representation of the parent HP ids
+     * @param altIds Integer representation of the alt_id's of the term
+     * @param obsolete true if the term is obsolete
+     * @param replacedBy Integer representation of the replaced_by id, or -1
+     * @param synonyms synonyms of the term
+     */
+    public Term(String name, int id, int[] isa, int[] altIds, boolean obsolete, int replacedBy, String[] synonyms) {
+	this(name,id,isa,altIds,obsolete,replacedBy);
+	this.synonyms=synonyms;
+    }
+
+    public boolean equals(Term other) { return this.id==other.id; }
 
     public Integer getID() { return this.id; }
 
     public String getName() { return this.name; }
 
-    public ArrayList<Integer> getParentIDs() { return this.isa; }
-
-    public void addIsAReference(Term parent) {
-	this.parentList.add(parent);
+    public ArrayList<Integer> getParentIDs() {
+	ArrayList<Integer> lst = new ArrayList<Integer>(isa.length);
+	for (int i : isa)
+	    lst.add(i);
+	return lst;
     }
 
-    public void addChildReference(Term child) {
-	this.childList.add(child);
-    }
+    /** @return Integer representation of the parent HP ids (the array must not be modified). */
+    public int[] getParentIdArray() { return this.isa; }
+
+    /** @return Integer representation of the alt_id's (the array must not be modified). */
+    public int[] getAltIds() { return this.altIds; }
+
+    /** @return synonyms of the term (the array must not be modified). */
+    public String[] getSynonyms() { return this.synonyms; }
 
-    public ArrayList<Term> getParents() { return this.parentList;}
+    public boolean isObsolete() { return this.obsolete; }
 
-    public ArrayList<Term> getChildren() { return this.childList;}
+    /** @return Integer representation of the replaced_by id of an obsolete term, or -1. */
+    public int getReplacedBy() { return this.replacedBy; }
 
 
     private String IdToString(Integer hpoid) {
@@ -57,7 +118,7 @@ public class Term {
     
     public String toString() {
 	StringBuffer sb = new StringBuffer();
-	for (Integer i:this.isa) {
+	for (int i:this.isa) {
 	    sb.append(IdToString(i) + "; ");
 	}
 	return String.format("%s [%s] is_a: %s",this.name,IdToString(this.id),sb.toString());
@@ -0,0 +1,212 @@
+package hpoutil.ontology;
+
+
+import java.util.List;
+
+/**
+ * An immutable set of HPO terms, for instance all descendants of a term that
+ * is used in a nosology definition, or the propagated annotations of a disease.
+ * The set refers to the dense term indices of the {@link HPO} object it was
+ * created from and is stored either as a sorted array of indices (sparse,
+ * membership by binary search) or as a bitset over all terms (dense, membership
+ * by a bit test). By default, the smaller of the two representations is used
+ * (see {@link #setRepresentation}).
+ * @author Peter Robinson
+ * @version 0.2 (19 May 2015)
+ */
+public final class TermSet {
+
+    /** How sets are stored. */
+    public enum Representation {
+	/** Sorted array of dense indices. */
+	SPARSE,
+	/** Bitset over all terms of the ontology. */
+	DENSE,
+	/** Whichever of the two needs less memory. */
+	AUTO
+    }
+
+    /** Representation of sets that are created from now on. */
+    private static Representation representation = Representation.AUTO;
+
+    /** The ontology whose dense term numbering is used for {@link #members}. */
+    private final HPO hpo;
+    /** Sorted dense indices of the terms in this set (null for a dense set). */
+    private final int[] members;
+    /** Bitset of the dense indices of the terms in this set (null for a sparse set). */
+    private final long[] bits;
+    /** Number of terms in the set. */
+    private final int size;
+
+    /**
+     * @param hpo ontology the indices refer to
+     * @param sortedIndices sorted dense term indices without duplicates (the array is not copied)
+     */
+    TermSet(HPO hpo, int[] sortedIndices) {
+	this.hpo=hpo;
+	this.size=sortedIndices.length;
+	int n = hpo.getTermCount();
+	boolean dense;
+	switch (representation) {
+	case DENSE: dense=true; break;
+	case SPARSE: dense=false; break;
+	default: dense = 32L*sortedIndices.length > n; /* 4 bytes per index vs. 1 bit per term */
+	}
+	if (dense) {
+	    this.bits = new long[(n+63)>>>6];
+	    for (int i : sortedIndices)
+		this.bits[i>>>6] |= 1L << i;
+	    this.members=null;
+	} else {
+	    this.bits=null;
+	    this.members=sortedIndices;
+	}
+    }
+
+    /**
+     * Set the representation of all TermSets that are created from now on
+     * (existing sets keep their representation).
+     */
+    public static void setRepresentation(Representation r) {
+	TermSet.representation=r;
+    }
+
+    public static Representation getRepresentation() { return TermSet.representation; }
+
+    /** @return number of terms in the set. */
+    public int size() { return this.size; }
+
+    /** @return the sorted dense indices of the terms in the set (a new array for dense sets; must not be modified). */
+    public int[] getIndices() {
+	if (this.members!=null)
+	    return this.members;
+	int[] a = new int[this.size];
+	int k=0;
+	for (int w=0;w<this.bits.length;w++) {
+	    long word = this.bits[w];
+	    while (word!=0) {
+		a[k++] = (w<<6) + Long.numberOfTrailingZeros(word);
+		word &= word-1;
+	    }
+	}
+	return a;
+    }
+
+    /** @return the ontology the dense indices of this set refer to. */
+    public HPO getHPO() { return this.hpo; }
+
+    /** @return true if the set is stored as a bitset. */
+    public boolean isDense() { return this.bits!=null; }
+
+    /** @return true if the term with the given dense index is in the set. */
+    public boolean containsIndex(int index) {
+	if (this.bits!=null)
+	    return index>=0 && (index>>>6)<this.bits.length && (this.bits[index>>>6] & (1L << index))!=0;
+	return java.util.Arrays.binarySearch(this.members,index)>=0;
+    }
+
+    /**
+     * @param id Integer representation of an HP id (e.g., 1234 for HP:0001234)
+     * @return true if the term is in the set; false if it is not or if the term is unknown
+     */
+    public boolean contains(Integer id) {
+	int i = this.hpo.getIndex(id);
+	return i>=0 && containsIndex(i);
+    }
+
+    /** @return true if at least one of the terms is in this set. */
+    public boolean containsAny(List<Integer> ids) {
+	for (Integer id : ids) {
+	    if (contains(id))
+		return true;
+	}
+	return false;
+    }
+
+    /** @return how many of the terms (counting duplicates) are in this set. */
+    public int countMembers(List<Integer> ids) {
+	int n=0;
+	for (Integer id : ids) {
+	    if (contains(id))
+		n++;
+	}
+	return n;
+    }
+
+    /**
+     * @param id Integer representation of an HP id
+     * @return true if the term is in the set; false if it is not or if the term is unknown
+     */
+    public boolean contains(int id) {
+	int i = this.hpo.getIndex(id);
+	return i>=0 && containsIndex(i);
+    }
+
+    /** @return true if at least one of the terms (Integer representations of HP ids) is in this set. */
+    public boolean containsAny(int[] ids) {
+	for (int id : ids) {
+	    if (contains(id))
+		return true;
+	}
+	return false;
+    }
+
+    /** @return how many of the terms (counting duplicates) are in this set. */
+    public int countMembers(int[] ids) {
+	int n=0;
+	for (int id : ids) {
+	    if (contains(id))
+		n++;
+	}
+	return n;
+    }
+
+    /**
+     * @param other a set of the same ontology, e.g., the terms of a rule
+     * @return true if the two sets have at least one term in common
+     */
+    public boolean intersects(TermSet other) {
+	if (other.hpo!=this.hpo)
+	    throw new IllegalArgumentException("[TermSet.java ERROR] sets belong to different ontologies");
+	if (this.bits!=null && other.bits!=null) {
+	    int len = Math.min(this.bits.length,other.bits.length);
+	    for (int w=0;w<len;w++) {
+		if ((this.bits[w] & other.bits[w])!=0)
+		    return true;
+	    }
+	    return false;
+	}
+	if (this.bits!=null)
+	    return other.intersects(this);
+	if (other.bits!=null) {
+	    for (int i : this.members) {
+		if (other.containsIndex(i))
+		    return true;
+	    }
+	    return false;
+	}
+	/* both sparse: merge the sorted arrays */
+	int i=0, j=0;
+	while (i<this.members.length && j<other.members.length) {
+	    int a = this.members[i], b = other.members[j];
+	    if (a==b)
+		return true;
+	    else if (a<b)
+		i++;
+	    else
+		j++;
+	}
+	return false;
+    }
+
+    /** @return Estimate of the heap memory used by the set in bytes. */
+    public long getMemoryUsage() {
+	long bytes = 32L;
+	if (this.bits!=null)
+	    bytes += 16L + 8L*this.bits.length;
+	else
+	    bytes += 16L + 4L*this.members.length;
+	return bytes;
+    }
+
+}
@@ -0,0 +1,228 @@
+package hpoutil.ontology;
+
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+
+/**
+ * Lookup of HPO terms by their names and synonyms. Texts are normalized
+ * (lower case, every run of characters other than letters and digits is
+ * replaced by a single blank), so that, e.g., "Short stature" and
+ * "short-stature" are the same key. Exact lookups use a hash table. Prefix
+ * lookups match the beginning of any token of a text, so that "stat" finds
+ * "Short stature": they use a binary search in the sorted array of all keys and
+ * in the sorted array of the token suffixes of the keys (the key from its second,
+ * third, ... token on), followed by a scan over the adjacent entries that share
+ * the prefix. Obsolete terms are not indexed.
+ * @author Peter Robinson
+ * @version 0.1 (12 May 2015)
+ */
+public class TermTextIndex {
+
+    private static final int[] NO_IDS = new int[0];
+
+    /** All normalized names and synonyms in lexicographic order. */
+    private final String[] keys;
+    /** ids[k]: sorted Integer representations of the HP ids of the terms with text keys[k]. */
+    private final int[][] ids;
+    /** Key: normalized name or synonym, value: position in {@link #keys}. */
+    private final HashMap<String,Integer> exact;
+    /**
+     * Token suffixes in lexicographic order: suffix s is keys[suffixKey[s]] from
+     * position suffixStart[s] on, where suffixStart[s]>0 is the start of a token.
+     */
+    private final int[] suffixKey;
+    private final int[] suffixStart;
+
+    public TermTextIndex(HPO hpo) {
+	HashMap<String,int[]> map = new HashMap<String,int[]>();
+	int n = hpo.getTermCount();
+	for (int i=0;i<n;i++) {
+	    Term t = hpo.getTermAt(i);
+	    if (t.isObsolete())
+		continue;
+	    add(map,normalize(t.getName()),t.getID());
+	    for (String syn : t.getSynonyms())
+		add(map,normalize(syn),t.getID());
+	}
+	map.remove("");
+	this.keys = map.keySet().toArray(new String[map.size()]);
+	Arrays.sort(this.keys);
+	this.ids = new int[keys.length][];
+	this.exact = new HashMap<String,Integer>(2*keys.length);
+	for (int k=0;k<keys.length;k++) {
+	    this.ids[k] = map.get(keys[k]);
+	    this.exact.put(keys[k],k);
+	}
+	int m=0;
+	for (String key : this.keys) {
+	    for (int i=key.indexOf(' ');i>=0;i=key.indexOf(' ',i+1))
+		m++;
+	}
+	final int[] key = new int[m];
+	final int[] start = new int[m];
+	Integer[] order = new Integer[m];
+	m=0;
+	for (int k=0;k<keys.length;k++) {
+	    for (int i=keys[k].indexOf(' ');i>=0;i=keys[k].indexOf(' ',i+1)) {
+		key[m]=k;
+		start[m]=i+1;
+		order[m]=m;
+		m++;
+	    }
+	}
+	Arrays.sort(order,new Comparator<Integer>() {
+		public int compare(Integer a, Integer b) {
+		    String x = keys[key[a]], y = keys[key[b]];
+		    int i=start[a], j=start[b];
+		    while (i<x.length() && j<y.length()) {
+			int c = x.charAt(i++)-y.charAt(j++);
+			if (c!=0)
+			    return c;
+		    }
+		    return (x.length()-i)-(y.length()-j);
+		}
+	    });
+	this.suffixKey = new int[m];
+	this.suffixStart = new int[m];
+	for (int s=0;s<m;s++) {
+	    this.suffixKey[s]=key[order[s]];
+	    this.suffixStart[s]=start[order[s]];
+	}
+    }
+
+    /** Add id to the (sorted, duplicate-free) ids for key. */
+    private static void add(HashMap<String,int[]> map, String key, int id) {
+	int[] old = map.get(key);
+	if (old==null) {
+	    map.put(key,new int[]{id});
+	    return;
+	}
+	int pos = Arrays.binarySearch(old,id);
+	if (pos>=0)
+	    return;
+	pos = -pos-1;
+	int[] a = new int[old.length+1];
+	System.arraycopy(old,0,a,0,pos);
+	a[pos]=id;
+	System.arraycopy(old,pos,a,pos+1,old.length-pos);
+	map.put(key,a);
+    }
+
+    /**
+     * Lower case the text and replace every run of characters that are not letters
+     * or digits by a single blank (leading and trailing blanks are removed).
+     */
+    public static String normalize(String text) {
+	StringBuilder sb = new StringBuilder(text.length());
+	boolean blank=false;
+	for (int i=0;i<text.length();i++) {
+	    char c = text.charAt(i);
+	    if (Character.isLetterOrDigit(c)) {
+		if (blank && sb.length()>0)
+		    sb.append(' ');
+		sb.append(Character.toLowerCase(c));
+		blank=false;
+	    } else {
+		blank=true;
+	    }
+	}
+	return sb.toString();
+    }
+
+    /**
+     * @param text a term name or synonym (free text, it is normalized before the lookup)
+     * @return Integer representations of the HP ids of all terms with this name or synonym
+     * (sorted, empty if there is none; the array must not be modified)
+     */
+    public int[] lookup(String text) {
+	Integer k = this.exact.get(normalize(text));
+	return k==null ? NO_IDS : this.ids[k];
+    }
+
+    /**
+     * @param prefix beginning of a token of a term name or synonym; it may span several
+     * tokens, e.g. "short stat" (it is normalized before the lookup)
+     * @param max maximum number of ids to return
+     * @return Integer representations of the HP ids of the terms that have a name or
+     * synonym with a token starting with the prefix, without duplicates: first the terms
+     * whose text starts with the prefix, then the terms matched by a later token, each
+     * group in the lexicographic order of the matched texts
+     */
+    public List<Integer> lookupPrefix(String prefix, int max) {
+	String p = normalize(prefix);
+	ArrayList<Integer> result = new ArrayList<Integer>();
+	HashSet<Integer> seen = new HashSet<Integer>();
+	for (int k=firstKeyAtLeast(p);k<keys.length && result.size()<max && keys[k].startsWith(p);k++)
+	    addIds(this.ids[k],max,result,seen);
+	for (int s=firstSuffixAtLeast(p);s<suffixKey.length && result.size()<max && suffixStartsWith(s,p);s++)
+	    addIds(this.ids[suffixKey[s]],max,result,seen);
+	return result;
+    }
+
+    private static void addIds(int[] termIds, int max, List<Integer> result, HashSet<Integer> seen) {
+	for (int id : termIds) {
+	    if (result.size()<max && seen.add(id))
+		result.add(id);
+	}
+    }
+
+    /**
+     * @return the number of distinct texts with a token that starts with prefix (normalized)
+     */
+    public int countPrefix(String prefix) {
+	String p = normalize(prefix);
+	HashSet<Integer> texts = new HashSet<Integer>();
+	for (int k=firstKeyAtLeast(p);k<keys.length && keys[k].startsWith(p);k++)
+	    texts.add(k);
+	for (int s=firstSuffixAtLeast(p);s<suffixKey.length && suffixStartsWith(s,p);s++)
+	    texts.add(suffixKey[s]);
+	return texts.size();
+    }
+
+    /** @return true if token suffix s starts with p. */
+    private boolean suffixStartsWith(int s, String p) {
+	return keys[suffixKey[s]].startsWith(p,suffixStart[s]);
+    }
+
+    /** @return position of the first token suffix that is not smaller than p. */
+    private int firstSuffixAtLeast(String p) {
+	int lo=0, hi=suffixKey.length;
+	while (lo<hi) {
+	    int mid = (lo+hi)>>>1;
+	    String key = keys[suffixKey[mid]];
+	    int from = suffixStart[mid];
+	    int len = Math.min(key.length()-from,p.length());
+	    int c=0;
+	    for (int i=0;i<len && c==0;i++)
+		c = key.charAt(from+i)-p.charAt(i);
+	    if (c==0)
+		c = (key.length()-from)-p.length();
+	    if (c<0)
+		lo=mid+1;
+	    else
+		hi=mid;
+	}
+	return lo;
+    }
+
+    /** @return position of the first key that is not smaller than s. */
+    private int firstKeyAtLeast(String s) {
+	int lo=0, hi=keys.length;
+	while (lo<hi) {
+	    int mid = (lo+hi)>>>1;
+	    if (keys[mid].compareTo(s)<0)
+		lo=mid+1;
+	    else
+		hi=mid;
+	}
+	return lo;
+    }
+
+    /** @return number of distinct normalized names and synonyms. */
+    public int size() { return this.keys.length; }
+}
@@ -0,0 +1,151 @@
+package hpoutil.omim;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.TreeSet;
+
+import org.junit.Test;
+
+/**
+ * Compares the set operations of {@link DiseaseSet} with {@link TreeSet} on random
+ * sets, including containers with more than 4096 entries (bitmaps) and containers
+ * that cross the array/bitmap threshold in either direction.
+ */
+public class DiseaseSetTest {
+
+    /** Maximum number of entries of an array container. */
+    private static final int ARRAY_MAX = 4096;
+    /** Sizes of a single container around the array/bitmap threshold. */
+    private static final int[] CONTAINER_SIZES = { 0, 1, 100, 4095, 4096, 4097, 5000, 20000 };
+
+    private final Random random = new Random(42);
+
+    /**
+     * @return random ids: n ids with the upper 16 bits hi (one container), plus
+     * extra ids spread over the whole range of MIM numbers
+     */
+    private TreeSet<Integer> randomIds(int hi, int n, int extra) {
+	TreeSet<Integer> ids = new TreeSet<Integer>();
+	while (ids.size()<n)
+	    ids.add((hi<<16) | random.nextInt(1<<16));
+	for (int i=0;i<extra;i++)
+	    ids.add(100000+random.nextInt(900000));
+	return ids;
+    }
+
+    private static int[] toArray(TreeSet<Integer> ids) {
+	int[] a = new int[ids.size()];
+	int k=0;
+	for (Integer id : ids)
+	    a[k++]=id;
+	return a;
+    }
+
+    private static void assertSame(String msg, TreeSet<Integer> expected, DiseaseSet actual) {
+	assertEquals(msg, expected.size(), actual.cardinality());
+	assertArrayEquals(msg, toArray(expected), actual.toArray());
+	ArrayList<Integer> iterated = new ArrayList<Integer>();
+	for (Integer id : actual)
+	    iterated.add(id);
+	assertEquals(msg, new ArrayList<Integer>(expected), iterated);
+	assertEquals(msg, new DiseaseSet(toArray(expected)), actual);
+    }
+
+    @Test
+    public void testAddAndContains() {
+	for (int n : CONTAINER_SIZES) {
+	    TreeSet<Integer> ids = randomIds(5,n,50);
+	    DiseaseSet set = new DiseaseSet();
+	    for (Integer id : ids)
+		set.add(id);
+	    assertSame("size " + n, ids, set);
+	    for (int k=0;k<1000;k++) {
+		int id = (5<<16) | random.nextInt(1<<16);
+		assertEquals("size " + n, ids.contains(id), set.contains(id));
+	    }
+	}
+    }
+
+    @Test
+    public void testBinaryOperations() {
+	for (int na : CONTAINER_SIZES) {
+	    for (int nb : CONTAINER_SIZES) {
+		TreeSet<Integer> a = randomIds(7,na,30);
+		TreeSet<Integer> b = randomIds(7,nb,30);
+		/* Overlap in a second container, so that both sets share more than one key. */
+		b.addAll(randomIds(3,nb/2,0));
+		a.addAll(randomIds(3,na/2,0));
+		DiseaseSet da = new DiseaseSet(a);
+		DiseaseSet db = new DiseaseSet(b);
+		String msg = na + "/" + nb;
+
+		TreeSet<Integer> and = new TreeSet<Integer>(a);
+		and.retainAll(b);
+		assertSame("and " + msg, and, DiseaseSet.and(da,db));
+		assertEquals("andCardinality " + msg, and.size(), DiseaseSet.andCardinality(da,db));
+
+		TreeSet<Integer> or = new TreeSet<Integer>(a);
+		or.addAll(b);
+		assertSame("or " + msg, or, DiseaseSet.or(da,db));
+
+		TreeSet<Integer> andNot = new TreeSet<Integer>(a);
+		andNot.removeAll(b);
+		assertSame("andNot " + msg, andNot, DiseaseSet.andNot(da,db));
+
+		/* The operands must not be modified. */
+		assertSame("a " + msg, a, da);
+		assertSame("b " + msg, b, db);
+	    }
+	}
+    }
+
+    @Test
+    public void testOperationsAcrossThreshold() {
+	/* Two arrays whose union is a bitmap, and two bitmaps whose intersection is an array. */
+	TreeSet<Integer> a = randomIds(2,3000,0);
+	TreeSet<Integer> b = randomIds(2,3000,0);
+	DiseaseSet da = new DiseaseSet(a);
+	DiseaseSet db = new DiseaseSet(b);
+	TreeSet<Integer> or = new TreeSet<Integer>(a);
+	or.addAll(b);
+	DiseaseSet union = DiseaseSet.or(da,db);
+	assertSame("or", or, union);
+	TreeSet<Integer> c = randomIds(2,10000,0);
+	DiseaseSet dc = new DiseaseSet(c);
+	TreeSet<Integer> and = new TreeSet<Integer>(or);
+	and.retainAll(c);
+	assertSame("and", and, DiseaseSet.and(union,dc));
+	assertEquals("andCardinality", and.size(), DiseaseSet.andCardinality(union,dc));
+	TreeSet<Integer> andNot = new TreeSet<Integer>(or);
+	andNot.removeAll(c);
+	assertSame("andNot", andNot, DiseaseSet.andNot(union,dc));
+	DiseaseSet all = new DiseaseSet(a);
+	all.addAll(db);
+	assertSame("addAll", or, all);
+    }
+
+    @Test
+    public void testRemove() {
+	for (int n : CONTAINER_SIZES) {
+	    TreeSet<Integer> ids = randomIds(9,n,40);
+	    DiseaseSet set = new DiseaseSet(ids);
+	    /* Remove ids (and some absent ones) until the set is empty, crossing the threshold downwards. */
+	    ArrayList<Integer> order = new ArrayList<Integer>(ids);
+	    java.util.Collections.shuffle(order,random);
+	    int step=0;
+	    for (Integer id : order) {
+		int absent = (9<<16) | random.nextInt(1<<16);
+		assertEquals("absent " + n, ids.remove(absent), set.remove(absent));
+		assertEquals("remove " + n, ids.remove(id), set.remove(id));
+		assertEquals("remove again " + n, false, set.remove(id));
+		if (++step%500==0 || ids.size()<50 || Math.abs(ids.size()-ARRAY_MAX)<=1)
+		    assertSame("remove " + n + " at " + ids.size(), ids, set);
+	    }
+	    assertEquals(0, set.cardinality());
+	    assertEquals(true, set.isEmpty());
+	}
+    }
+}
@@ -0,0 +1,133 @@
+package hpoutil.omim;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+
+import org.junit.Test;
+
+/**
+ * Compares the single-pass tokenizer of {@link OMIMDisease} with the cascade of
+ * {@link String#split} calls that it replaced.
+ */
+public class OMIMDiseaseTest {
+
+    /** Result of the old tokenizer for one line. */
+    private static class Reference {
+	Integer omimId=null;
+	boolean somatic=false;
+	boolean modifier=false;
+	LinkedHashSet<String> genes = new LinkedHashSet<String>();
+    }
+
+    /**
+     * The parser as it was before the single-pass tokenizer. It only knew '|' as field
+     * separator, and it kept repeated genes (the new parser keeps each gene once, so the
+     * genes are collected in a set here).
+     */
+    private static Reference parseWithSplit(String line) {
+	Reference ref = new Reference();
+	String[] segments = line.split("\\|");
+	String nameField = segments[0];
+	String geneField = segments[1];
+	int n_digits = 0;
+	for (int pos=0; pos<nameField.length(); pos++) {
+	    if (Character.isDigit(nameField.charAt(pos))) {
+		if (++n_digits == 6) {
+		    ref.omimId = Integer.parseInt(nameField.substring(pos-5,pos+1));
+		    break;
+		}
+	    } else {
+		n_digits = 0;
+	    }
+	}
+	ref.somatic = nameField.indexOf("somatic") >= 0;
+	ref.modifier = nameField.indexOf("modifier") >= 0 || nameField.indexOf("modification") >= 0;
+	for (String geneSegment : geneField.split(",")) {
+	    geneSegment = geneSegment.trim();
+	    for (String gene : geneSegment.split(";")) {
+		gene = gene.trim();
+		for (String geneG : gene.split("\\.")) {
+		    ref.genes.add(geneG.trim());
+		}
+	    }
+	}
+	return ref;
+    }
+
+    private static void assertSameAsSplit(String line) {
+	assertSameAsSplit(line,line);
+    }
+
+    /**
+     * @param line line for the new parser
+     * @param pipeLine the same line with '|' as field separator, for the old parser
+     */
+    private static void assertSameAsSplit(String line, String pipeLine) {
+	Reference ref = parseWithSplit(pipeLine);
+	OMIMDisease d = new OMIMDisease(line);
+	/* The old parser marked a line without genes as unparsable, too. */
+	assertEquals(line, ref.genes.isEmpty(), d.is_unparsable());
+	assertEquals(line, ref.omimId, d.getOMIM_ID());
+	assertEquals(line, ref.somatic, d.is_somatic());
+	assertEquals(line, ref.modifier, d.is_modifier());
+	assertEquals(line, new ArrayList<String>(ref.genes), d.getGenes());
+    }
+
+    @Test
+    public void testSimpleLine() {
+	assertSameAsSplit("Achondroplasia, 100800 (3)|FGFR3, ACH|134934|4p16.3");
+	assertSameAsSplit("Hypochondroplasia, 146000 (3)|FGFR3; HCH.X|134934|4p16.3");
+    }
+
+    @Test
+    public void testLeadingAndTrailingSeparators() {
+	assertSameAsSplit("Disease A, 123456 (3)|,FGFR3,ACH,|134934|4p16.3");
+	assertSameAsSplit("Disease A, 123456 (3)|;FGFR3;ACH;|134934|4p16.3");
+	assertSameAsSplit("Disease A, 123456 (3)|.FGFR3.ACH.|134934|4p16.3");
+	assertSameAsSplit("Disease A, 123456 (3)| , FGFR3 ; .ACH. , |134934|4p16.3");
+	assertSameAsSplit("Disease A, 123456 (3)|,,,|134934|4p16.3");
+	assertSameAsSplit("Disease A, 123456 (3)|FGFR3,,;.,|134934|4p16.3");
+    }
+
+    @Test
+    public void testEmptyPieceBetweenSeparators() {
+	assertSameAsSplit("Disease B, 234567 (3)|A, ,B|134934|4p16.3");
+	assertSameAsSplit("Disease B, 234567 (3)|A;;B, C. .D|134934|4p16.3");
+    }
+
+    @Test
+    public void testEmptyGeneField() {
+	assertSameAsSplit("Disease C, 345678 (3)||134934|4p16.3");
+	assertSameAsSplit("Disease C, 345678 (3)| |134934|4p16.3");
+    }
+
+    @Test
+    public void testTabSeparatedLine() {
+	String line = "Disease D, 456789 (3)\tGENE1, GENE2; GENE3\t134934\t4p16.3";
+	assertSameAsSplit(line,line.replace('\t','|'));
+	line = "Disease D, 456789 (3)\t, A, ,B,\t134934\t4p16.3";
+	assertSameAsSplit(line,line.replace('\t','|'));
+    }
+
+    @Test
+    public void testSomaticOnlyInNameField() {
+	assertSameAsSplit("Colorectal cancer, somatic, 114500 (3)|APC|611731|5q22.2");
+	assertSameAsSplit("Colorectal cancer, 114500 (3)|APC, somatic|611731|5q22.2");
+	assertSameAsSplit("Colorectal cancer, 114500 (3)|APC|611731|5q22.2 somatic modifier");
+	assertTrue(new OMIMDisease("Colorectal cancer, somatic, 114500 (3)|APC|611731|5q22.2").is_somatic());
+	assertFalse(new OMIMDisease("Colorectal cancer, 114500 (3)|APC, somatic|611731|5q22.2").is_somatic());
+	assertSameAsSplit("Height, modifier of, 606255 (3)|SOX5|604975|12p12.1");
+	assertSameAsSplit("Height, 606255 (3)|SOX5|604975|12p12.1 modification");
+    }
+
+    @Test
+    public void testRepeatedGeneIsKeptOnce() {
+	OMIMDisease d = new OMIMDisease("Disease E, 567890 (3)|A, B, A; B|134934|4p16.3");
+	assertEquals(2, d.getGenes().size());
+	assertSameAsSplit("Disease E, 567890 (3)|A, B, A; B|134934|4p16.3");
+    }
+}